@@ -0,0 +1,104 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.example.mytextpdf.utils.PDFContant;
+import com.example.mytextpdf.utils.TextParser;
+
+/**
+ * 性能测试使用的模板和数据
+ *
+ * "contract" 为 pdfTemplate 中的融资合同，数字为生成的页数相同的模板，
+ * 每一页包含标题、数据、正文和一个小表格，页之间用 pagebreak 分隔。
+ * 在项目根目录下运行：
+ *
+ * <pre>
+ * mvn -Pjmh compile exec:exec
+ * mvn -Pjmh compile exec:exec -Djmh.include=TextParserBenchmark
+ * mvn -Pjmh compile exec:exec -Djmh.doc=/path/to/contract.doc
+ * </pre>
+ */
+final class BenchmarkTemplates
+{
+	static final String CONTRACT = "contract";
+
+	private static final String PARAGRAPH = "本合同项下的应收账款转让后，"
+			+ "卖方仍应按照基础交易合同的约定履行其义务，保理公司不承担"
+			+ "卖方在基础交易合同项下的任何义务和责任。";
+
+	private BenchmarkTemplates() {
+	}
+
+	/**
+	 * 取得模板
+	 * @param name "contract" 或者页数
+	 */
+	static byte[] xml(String name) throws IOException {
+		if (CONTRACT.equals(name)) {
+			return Files.readAllBytes(Paths.get(
+					PDFContant.resourcePath, "pdfTemplate", "融资合同.xml"));
+		}
+		return syntheticXML(Integer.parseInt(name)).getBytes("UTF-8");
+	}
+
+	/**
+	 * 取得模板对应的数据
+	 * @param name "contract" 或者页数
+	 */
+	static byte[] json(String name) throws IOException {
+		if (CONTRACT.equals(name)) {
+			return Files.readAllBytes(Paths.get(
+					PDFContant.resourcePath, "pdfTemplate", "融资合同.json"));
+		}
+		return ("{\"data\": {\"buyer\": \"X公司\", \"seller\": \"建设银行\", "
+				+ "\"amount\": \"160,000.00\", \"date\": \"2022年2月17日\"}}")
+				.getBytes("UTF-8");
+	}
+
+	/**
+	 * 生成指定页数的模板
+	 */
+	static String syntheticXML(int pages) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<textpdf>\n");
+		for (int i = 1; i <= pages; i++) {
+			if (i > 1) {
+				xml.append("<pagebreak/>\n");
+			}
+			xml.append("<chapter>第 ").append(i).append(" 部分</chapter>\n")
+					.append("<para><span>卖方：</span>"
+							+ "<value id=\"buyer\" font-style=\"bold\"/></para>\n")
+					.append("<para><span>保理公司：</span>"
+							+ "<value id=\"seller\" font-style=\"bold\"/></para>\n")
+					.append("<para><span>融资金额：</span><value id=\"amount\"/>"
+							+ "<span>，签署日期：</span><value id=\"date\"/></para>\n");
+			for (int j = 0; j < 6; j++) {
+				xml.append("<para>").append(PARAGRAPH).append("</para>\n");
+			}
+			xml.append("<table columns=\"1,2,2\">\n");
+			for (int j = 1; j <= 4; j++) {
+				xml.append("<cell>").append(j).append("</cell>")
+						.append("<cell>2022年2月17日</cell>")
+						.append("<cell><value id=\"amount\"/></cell>\n");
+			}
+			xml.append("</table>\n");
+		}
+		xml.append("</textpdf>\n");
+		return xml.toString();
+	}
+
+	/**
+	 * 生成 PDF，用于后处理的测试
+	 */
+	static byte[] pdf(String name) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new TextParser(new ByteArrayInputStream(xml(name)),
+				new ByteArrayInputStream(json(name)), out).genPDF();
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.DocReader;
+
+/**
+ * .doc 转换为模板
+ *
+ * 仓库中没有 .doc 样本，需要通过 -Djmh.doc=文件路径 指定，
+ * 没有指定时 pom.xml 中的 jmh 配置不运行这个测试。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocReaderBenchmark
+{
+	private byte[] doc;
+
+	@Setup
+	public void setup() throws Exception {
+		String path = System.getProperty("textpdf.bench.doc", "");
+		if (path.isEmpty()) {
+			throw new IllegalStateException(
+					"Use -Djmh.doc=<file.doc> to benchmark DocReader.");
+		}
+		doc = Files.readAllBytes(Paths.get(path));
+	}
+
+	@Benchmark
+	public int read() throws Exception {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream(doc.length);
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		new DocReader().read(new ByteArrayInputStream(doc), xml, json);
+		return xml.size() + json.size();
+	}
+
+	@Benchmark
+	public int readAutoTitle() throws Exception {
+		ByteArrayOutputStream xml = new ByteArrayOutputStream(doc.length);
+		DocReader reader = new DocReader();
+		reader.setAutoTitle(true);
+		reader.ignoreBlankPara(true);
+		reader.read(new ByteArrayInputStream(doc), xml, null);
+		return xml.size();
+	}
+
+}
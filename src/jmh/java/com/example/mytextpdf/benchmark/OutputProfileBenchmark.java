@@ -0,0 +1,86 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.CompiledTemplate;
+import com.example.mytextpdf.utils.DataSource;
+import com.example.mytextpdf.utils.PDFDoc;
+import com.example.mytextpdf.utils.PDFOutputProfile;
+
+/**
+ * 各输出方式的生成时间，文件大小在 setup 中打印
+ *
+ * threads 为关闭时并行压缩的线程数，0 表示生成时顺序压缩，
+ * 例如 -Djmh.include="OutputProfileBenchmark -p template=300 -p threads=0,1,2,4"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputProfileBenchmark
+{
+	@Param({ "FAST", "BALANCED", "ARCHIVE" })
+	public String profile;
+
+	@Param({ BenchmarkTemplates.CONTRACT, "100" })
+	public String template;
+
+	@Param({ "0" })
+	public int threads;
+
+	private PDFOutputProfile output_profile;
+	private CompiledTemplate compiled;
+	private DataSource data_source;
+	private ForkJoinPool deflate_pool;
+	private int pdf_size;
+
+	@Setup
+	public void setup() throws Exception {
+		output_profile = PDFOutputProfile.valueOf(profile);
+		deflate_pool = threads > 0 ? new ForkJoinPool(threads) : null;
+		compiled = CompiledTemplate.compile(
+				new ByteArrayInputStream(BenchmarkTemplates.xml(template)));
+		// 静态段缓存会跳过排版，这里只比较输出方式
+		compiled.setStaticPageCache(false);
+		data_source = compiled.parseData(
+				new ByteArrayInputStream(BenchmarkTemplates.json(template)));
+		pdf_size = render();
+		System.out.printf("%n%s %s: %d bytes%n", template, profile, pdf_size);
+	}
+
+	@Benchmark
+	public int render() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf_size);
+		PDFDoc pdf_doc = new PDFDoc(out);
+		pdf_doc.setOutputProfile(output_profile);
+		pdf_doc.setDeflatePool(deflate_pool);
+		compiled.render(pdf_doc, data_source);
+		return out.size();
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (deflate_pool != null) {
+			deflate_pool.shutdown();
+		}
+	}
+
+}
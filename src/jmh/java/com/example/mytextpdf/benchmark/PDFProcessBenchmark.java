@@ -0,0 +1,244 @@
+package com.example.mytextpdf.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.FontRegistry;
+import com.example.mytextpdf.utils.PDFProcess;
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfGState;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+
+/**
+ * PDF 后处理，每个操作都包含读入和保存 PDF
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PDFProcessBenchmark
+{
+	@Param({ BenchmarkTemplates.CONTRACT, "10", "100", "1000" })
+	public String template;
+
+	private byte[] pdf;
+	private Path pdf_path;
+	private Path image_path;
+
+	@Setup
+	public void setup() throws Exception {
+		pdf = BenchmarkTemplates.pdf(template);
+		pdf_path = Files.createTempFile("textpdf-bench", ".pdf");
+		Files.write(pdf_path, pdf);
+
+		BufferedImage image = new BufferedImage(160, 80,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, 160, 80);
+		graphics.setColor(Color.RED);
+		graphics.drawOval(10, 10, 140, 60);
+		graphics.dispose();
+		image_path = Files.createTempFile("textpdf-bench", ".png");
+		ImageIO.write(image, "png", image_path.toFile());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(pdf_path);
+		Files.deleteIfExists(image_path);
+	}
+
+	private PDFProcess open(ByteArrayOutputStream out) throws IOException {
+		return new PDFProcess(new ByteArrayInputStream(pdf), out);
+	}
+
+	/**
+	 * 只读入和保存，作为其它操作的参照
+	 */
+	@Benchmark
+	public int copy() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		open(out).finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addTextMarkerCenter() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addTextMarker("TextPdf 水印", 0.3f, 45, 48,
+				PDFProcess.MARKER_STYLE_CENTER);
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addTextMarkerFull() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addTextMarker("TextPdf 水印", 0.3f, 30, 24,
+				PDFProcess.MARKER_STYLE_FULL);
+		process.finish();
+		return out.size();
+	}
+
+	/**
+	 * 旧的水印做法：每页重复输出文字，与 addTextMarkerFull 对比
+	 */
+	@Benchmark
+	public int addTextMarkerPerPage() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PdfReader reader = new PdfReader(pdf);
+		PdfStamper stamper = new PdfStamper(reader, out);
+		BaseFont base_font = FontRegistry.getBaseFont(FontRegistry.FONT_SONG);
+		String text = "TextPdf 水印";
+		int font_size = 24;
+
+		for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+			Rectangle page_rect = reader.getPageSizeWithRotation(i);
+			float width = page_rect.getWidth();
+			float height = page_rect.getHeight();
+			float text_width = font_size * text.length();
+
+			PdfGState gs = new PdfGState();
+			gs.setFillOpacity(0.3f);
+
+			PdfContentByte content = stamper.getUnderContent(i);
+			content.beginText();
+			content.setGState(gs);
+			content.setColorFill(BaseColor.GRAY);
+			content.setFontAndSize(base_font, font_size);
+			for (float y = height - 20; y > -height + 20; y -= 100) {
+				for (float x = 10; x < width - 10; x += text_width) {
+					content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
+							text, x, y, 30);
+				}
+			}
+			content.endText();
+		}
+		stamper.close();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addImgMarkerFirstPage() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addImgMarker(image_path.toString(), -150, 20, 120, 60,
+				0.8f, true);
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addImgMarkerEveryPage() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addImgMarker(image_path.toString(), -150, 20, 120, 60,
+				0.8f, false);
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addImgMarkerPageNo() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addImgMarker(image_path.toString(), -150, 20, 120, 60,
+				0.8f, 1);
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addQRCode() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addQRCode("https://example.com/contract/20220217-0001");
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addHeader() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addHeader("金易融-应收账款转让融资合同");
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int addPageNum() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.addPageNum();
+		process.finish();
+		return out.size();
+	}
+
+	@Benchmark
+	public int encrypt() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = open(out);
+		process.encrypt("user", null, PDFProcess.ALLOW_PRINTING);
+		process.finish();
+		return out.size();
+	}
+
+	/**
+	 * 增量更新方式保存
+	 */
+	@Benchmark
+	public int addPageNumAppend() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length * 2);
+		PDFProcess process = new PDFProcess(new ByteArrayInputStream(pdf),
+				out, true);
+		process.addPageNum();
+		process.finish();
+		return out.size();
+	}
+
+	/**
+	 * 通过内存映射读取文件
+	 */
+	@Benchmark
+	public int addPageNumMapped() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+		PDFProcess process = new PDFProcess(pdf_path, out);
+		process.addPageNum();
+		process.finish();
+		return out.size();
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.CompiledTemplate;
+import com.example.mytextpdf.utils.DataSource;
+import com.example.mytextpdf.utils.PDFDoc;
+
+/**
+ * 各段并行排版，延迟与线程数的关系
+ *
+ * 24 段，每段包含数据和一个 repeat 表格，约 120 页。
+ * threads 为 0 时在调用线程中顺序排版。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSegmentBenchmark
+{
+	@Param({ "0", "1", "2", "4", "8" })
+	public int threads;
+
+	private CompiledTemplate template;
+	private DataSource source;
+	private ExecutorService executor;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder xml = new StringBuilder("<textpdf>");
+		for (int i = 1; i <= 24; i++) {
+			if (i > 1) {
+				xml.append("<pagebreak/>");
+			}
+			xml.append("<chapter>Schedule ").append(i).append("</chapter>")
+					.append("<para><span>Borrower:</span><value id=\"buyer\"/></para>");
+			for (int j = 0; j < 10; j++) {
+				xml.append("<para>Terms of schedule ").append(i)
+						.append(" remain in force until every instalment is repaid.</para>");
+			}
+			xml.append("<table columns=\"1,2,2\"><repeat path=\"plan\">"
+					+ "<cell><value id=\"period\"/></cell>"
+					+ "<cell><value id=\"date\"/></cell>"
+					+ "<cell><value id=\"amount\"/></cell></repeat></table>");
+		}
+		xml.append("</textpdf>");
+		template = CompiledTemplate.compile(
+				new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+		source = DataSource.of("parallel", data());
+		executor = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> data() {
+		JSONArray plan = new JSONArray();
+		for (int i = 1; i <= 140; i++) {
+			JSONObject row = new JSONObject();
+			row.put("period", (long) i);
+			row.put("date", "2024-01-15");
+			row.put("amount", "1000.50");
+			plan.add(row);
+		}
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("buyer", "ACME");
+		data.put("plan", plan);
+		return data;
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	@Benchmark
+	public int render() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PDFDoc pdf_doc = new PDFDoc(out);
+		pdf_doc.addPageNum();
+		if (executor == null) {
+			template.render(pdf_doc, source);
+		} else {
+			template.render(pdf_doc, source, executor);
+		}
+		return out.size();
+	}
+
+}
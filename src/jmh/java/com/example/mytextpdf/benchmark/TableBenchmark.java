@@ -0,0 +1,101 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.example.mytextpdf.utils.CompiledTemplate;
+import com.example.mytextpdf.utils.TextParser;
+
+/**
+ * 长表格：表格分段输出，表头在每页重复；repeat 元素按数据生成表格行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark
+{
+	@Param({ "1000", "10000" })
+	public int rows;
+
+	private byte[] table_xml;
+	private byte[] table_json;
+	private CompiledTemplate repeat_template;
+	private JSONObject repeat_data;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<textpdf><table columns=\"1,2,2,2\" header-rows=\"1\">");
+		xml.append("<cell>期数</cell><cell>日期</cell><cell>本金</cell><cell>利息</cell>");
+		for (int i = 1; i <= rows; i++) {
+			xml.append("<cell>").append(i).append("</cell>");
+			xml.append("<cell>2024-01-15</cell><cell>1000.00</cell><cell>10.50</cell>");
+		}
+		xml.append("</table></textpdf>");
+		table_xml = xml.toString().getBytes("UTF-8");
+		table_json = "{\"title\": \"还款计划\", \"data\": {}}".getBytes("UTF-8");
+
+		repeat_template = CompiledTemplate.compile(new ByteArrayInputStream((
+				"<textpdf><table columns=\"1,2,2\" header-rows=\"1\">"
+				+ "<cell>No</cell><cell>Date</cell><cell>Amount</cell>"
+				+ "<repeat path=\"plan\">"
+				+ "<cell><value id=\"period\"/></cell>"
+				+ "<cell><value id=\"date\"/></cell>"
+				+ "<cell>CNY<value id=\"amount\"/></cell>"
+				+ "</repeat></table></textpdf>").getBytes("UTF-8")));
+		repeat_data = repeatData(rows);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject repeatData(int rows) {
+		JSONArray plan = new JSONArray();
+		for (int i = 1; i <= rows; i++) {
+			JSONObject row = new JSONObject();
+			row.put("period", (long) i);
+			row.put("date", "2024-01-15");
+			row.put("amount", 1000.5);
+			plan.add(row);
+		}
+		JSONObject data = new JSONObject();
+		data.put("plan", plan);
+		JSONObject json = new JSONObject();
+		json.put("title", "repeat");
+		json.put("data", data);
+		return json;
+	}
+
+	@Benchmark
+	public int streamingTable() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new TextParser(new ByteArrayInputStream(table_xml),
+				new ByteArrayInputStream(table_json), out).genPDF();
+		return out.size();
+	}
+
+	@Benchmark
+	public int repeatTemplate() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		repeat_template.renderPDF(repeat_data, out);
+		return out.size();
+	}
+
+}
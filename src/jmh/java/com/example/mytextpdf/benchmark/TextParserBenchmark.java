@@ -0,0 +1,73 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.CompiledTemplate;
+import com.example.mytextpdf.utils.TextParser;
+
+/**
+ * 模板解析、PDF 排版和 HTML 输出
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextParserBenchmark
+{
+	@Param({ BenchmarkTemplates.CONTRACT, "10", "100", "1000" })
+	public String template;
+
+	private byte[] xml;
+	private byte[] json;
+	private int pdf_size;
+	private int html_size;
+
+	@Setup
+	public void setup() throws Exception {
+		xml = BenchmarkTemplates.xml(template);
+		json = BenchmarkTemplates.json(template);
+		pdf_size = BenchmarkTemplates.pdf(template).length;
+		html_size = pdf_size / 4;
+	}
+
+	/**
+	 * 只解析 XML 模板
+	 */
+	@Benchmark
+	public CompiledTemplate compile() throws Exception {
+		return CompiledTemplate.compile(new ByteArrayInputStream(xml));
+	}
+
+	@Benchmark
+	public int genPDF() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(pdf_size);
+		new TextParser(new ByteArrayInputStream(xml),
+				new ByteArrayInputStream(json), out).genPDF();
+		return out.size();
+	}
+
+	@Benchmark
+	public int genHTML() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(html_size);
+		new TextParser(new ByteArrayInputStream(xml),
+				new ByteArrayInputStream(json), out).genHTML();
+		return out.size();
+	}
+
+}
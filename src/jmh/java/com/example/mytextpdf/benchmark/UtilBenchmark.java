@@ -0,0 +1,111 @@
+package com.example.mytextpdf.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.mytextpdf.utils.Util;
+
+/**
+ * 转义和模板文字整理
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark
+{
+	/**
+	 * plain 不需要转义，markup 每隔几个字符就有需要转义的字符，
+	 * cjk 和 latin 分别是中文为主和英文为主的正文
+	 */
+	@Param({ "plain", "markup", "cjk", "latin" })
+	public String text;
+
+	private String string;
+	private char[] chars;
+	private StringBuilder builder;
+
+	@Setup
+	public void setup() {
+		StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			if (text.equals("plain")) {
+				source.append("应收账款转让融资合同 Contract clause ");
+			} else if (text.equals("cjk")) {
+				source.append("保理公司已受让申请融资所对应的应收账款，");
+			} else if (text.equals("latin")) {
+				source.append("The quick brown fox jumps & over <the> lazy dog. ");
+			} else {
+				source.append("<b>\"A\" & 'B'</b>\n  融资金额 > 0; ");
+			}
+		}
+		string = source.toString();
+		chars = string.toCharArray();
+		builder = new StringBuilder(string.length() * 2);
+	}
+
+	@Benchmark
+	public String escapeXMLString() {
+		return Util.escapeXMLString(string);
+	}
+
+	@Benchmark
+	public String escapeHTMLString() {
+		return Util.escapeHTMLString(string);
+	}
+
+	@Benchmark
+	public String escapeHTMLText() {
+		return Util.escapeHTMLText(string);
+	}
+
+	@Benchmark
+	public int escapeXML() throws IOException {
+		builder.setLength(0);
+		Util.escapeXML(string, builder);
+		return builder.length();
+	}
+
+	@Benchmark
+	public int escapeHTML() throws IOException {
+		builder.setLength(0);
+		Util.escapeHTML(string, builder, true);
+		return builder.length();
+	}
+
+	@Benchmark
+	public int escapeChars() {
+		int count = 0;
+		for (int i = 0; i < chars.length; i++) {
+			if (Util.escapeXMLChars(chars[i]) != null) {
+				count++;
+			}
+			if (Util.escapeHTMLChars(chars[i]) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int appendTemplateText() {
+		builder.setLength(0);
+		Util.appendTemplateText(builder, chars, 0, chars.length);
+		return builder.length();
+	}
+
+}
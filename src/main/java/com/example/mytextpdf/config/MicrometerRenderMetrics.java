@@ -0,0 +1,181 @@
+package com.example.mytextpdf.config;
+
+import com.example.mytextpdf.utils.RenderMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 Micrometer 输出生成过程的统计
+ * <p>
+ * 作为 MeterBinder 注册后，Actuator 创建 MeterRegistry 时调用 bindTo()，
+ * 这时才安装到 RenderMetrics，没有 MeterRegistry 时生成过程不做任何统计。
+ * 绑定到多个 MeterRegistry 时，统计项只创建一次，通过 CompositeMeterRegistry
+ * 同时输出到所有的 MeterRegistry。
+ * 统计项：
+ * <ul>
+ * <li>textpdf.phase：各阶段耗时，标签 phase</li>
+ * <li>textpdf.documents、textpdf.pages、textpdf.output：文档数、页数、输出字节数，标签 type</li>
+ * <li>textpdf.missing.keys：数据中找不到的 value 和 repeat</li>
+ * <li>textpdf.cache：缓存查找次数，标签 cache 和 result(hit/miss)</li>
+ * </ul>
+ */
+public class MicrometerRenderMetrics extends RenderMetrics implements MeterBinder {
+
+    private static final String[] PHASES = {
+            PHASE_JSON, PHASE_TEMPLATE, PHASE_LAYOUT, PHASE_CLOSE, PHASE_STAMP
+    };
+    private static final String[] CACHES = {
+            CACHE_FONT, CACHE_BASE_FONT, CACHE_IMAGE, CACHE_QRCODE
+    };
+    private static final String[] TYPES = {TYPE_PDF, TYPE_HTML};
+
+    // 绑定过的所有 MeterRegistry
+    private final CompositeMeterRegistry registries = new CompositeMeterRegistry();
+    // 第一次绑定时创建，之后不再改变，只读
+    private volatile Meters meters = null;
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+        if (meters == null) {
+            meters = new Meters(registries);
+            RenderMetrics.install(this);
+        }
+    }
+
+    /**
+     * 停止统计，应用关闭时由 Spring 调用
+     */
+    public void close() {
+        if (RenderMetrics.get() == this) {
+            RenderMetrics.install(null);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return meters != null;
+    }
+
+    @Override
+    public void recordPhase(String phase, long nanos) {
+        Meters current = meters;
+        if (current == null) {
+            return;
+        }
+        Timer timer = current.phases.get(phase);
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void recordDocument(String type, int pages, long bytes) {
+        Meters current = meters;
+        if (current == null) {
+            return;
+        }
+        DocumentMeters document = current.documents.get(type);
+        if (document != null) {
+            document.documents.increment();
+            document.pages.increment(pages);
+            document.bytes.record(bytes);
+        }
+    }
+
+    @Override
+    public void recordMissingKey() {
+        Meters current = meters;
+        if (current != null) {
+            current.missing_keys.increment();
+        }
+    }
+
+    @Override
+    public void recordCache(String cache, boolean hit) {
+        Meters current = meters;
+        if (current == null) {
+            return;
+        }
+        Counter[] counters = current.caches.get(cache);
+        if (counters != null) {
+            counters[hit ? 0 : 1].increment();
+        }
+    }
+
+    /**
+     * 一个 MeterRegistry 中的所有统计项，创建后只读
+     */
+    private static class Meters {
+        final Map<String, Timer> phases = new HashMap<String, Timer>();
+        final Map<String, DocumentMeters> documents =
+                new HashMap<String, DocumentMeters>();
+        // 每个缓存两个计数器：命中、未命中
+        final Map<String, Counter[]> caches = new HashMap<String, Counter[]>();
+        final Counter missing_keys;
+
+        Meters(MeterRegistry registry) {
+            for (String phase : PHASES) {
+                phases.put(phase, Timer.builder("textpdf.phase")
+                        .description("Time spent in each render phase")
+                        .tag("phase", phase)
+                        .register(registry));
+            }
+            for (String type : TYPES) {
+                documents.put(type, new DocumentMeters(registry, type));
+            }
+            for (String cache : CACHES) {
+                caches.put(cache, new Counter[]{
+                        cacheCounter(registry, cache, "hit"),
+                        cacheCounter(registry, cache, "miss")
+                });
+            }
+            missing_keys = Counter.builder("textpdf.missing.keys")
+                    .description("Template values not found in the data")
+                    .register(registry);
+        }
+
+        private static Counter cacheCounter(MeterRegistry registry,
+                                            String cache, String result) {
+            return Counter.builder("textpdf.cache")
+                    .description("Cache lookups")
+                    .tag("cache", cache)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * 一种文档类型的统计项
+     */
+    private static class DocumentMeters {
+        final Counter documents;
+        final Counter pages;
+        final DistributionSummary bytes;
+
+        DocumentMeters(MeterRegistry registry, String type) {
+            documents = Counter.builder("textpdf.documents")
+                    .description("Documents rendered")
+                    .tag("type", type)
+                    .register(registry);
+            pages = Counter.builder("textpdf.pages")
+                    .description("Pages rendered")
+                    .tag("type", type)
+                    .register(registry);
+            bytes = DistributionSummary.builder("textpdf.output")
+                    .description("Size of rendered documents")
+                    .baseUnit("bytes")
+                    .tag("type", type)
+                    .register(registry);
+        }
+    }
+
+}
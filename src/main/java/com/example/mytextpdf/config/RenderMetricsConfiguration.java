@@ -0,0 +1,23 @@
+package com.example.mytextpdf.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 生成过程统计配置
+ * <p>
+ * Actuator 会把 MeterBinder 绑定到它创建的 MeterRegistry。Actuator 是可选依赖，
+ * 由部署的应用引入并决定暴露哪些端点，暴露 metrics 端点后统计结果通过
+ * /actuator/metrics/textpdf.* 查看。
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class RenderMetricsConfiguration {
+
+    @Bean
+    public MicrometerRenderMetrics textPdfRenderMetrics() {
+        return new MicrometerRenderMetrics();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.example.mytextpdf.config;
+
+import com.example.mytextpdf.utils.TextPdfEngine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 文档生成引擎配置
+ * <p>
+ * 整个应用共享一个 TextPdfEngine，各请求线程可以同时使用。
+ * 需要其它参数时，应用可以自己定义 TextPdfEngine bean 替换这个默认的。
+ */
+@Configuration
+public class TextPdfConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TextPdfEngine textPdfEngine(
+            @Value("${textpdf.font.dir:}") String font_dir) {
+        TextPdfEngine.Builder builder = TextPdfEngine.builder();
+        if (!font_dir.isEmpty()) {
+            builder.setFontDirectory(font_dir);
+        }
+        return builder.build();
+    }
+
+}
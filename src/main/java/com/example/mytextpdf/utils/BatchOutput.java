@@ -0,0 +1,98 @@
+package com.example.mytextpdf.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量生成的输出目标，每条记录生成的文档通过 write() 写入
+ *
+ * write() 会被多个工作线程同时调用，实现类需要保证线程安全。
+ */
+public abstract class BatchOutput
+{
+	/**
+	 * 写入一个生成好的文档
+	 * @param name 文档名称(不含路径)
+	 * @param contents 文档内容
+	 * @throws IOException
+	 */
+	public abstract void write(String name, byte[] contents)
+			throws IOException;
+
+	/**
+	 * 所有记录处理完成后调用
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+	}
+
+	/**
+	 * 每个文档输出为目录中的一个文件
+	 * @param dir 输出目录，不存在时会自动创建
+	 * @return
+	 */
+	public static BatchOutput directory(File dir) {
+		return new DirectoryOutput(dir);
+	}
+
+	/**
+	 * 所有文档输出到一个 ZIP 数据流中，ZIP 条目按完成的先后顺序写入
+	 * @param out_stream 输出流，finish() 时不会关闭这个流
+	 * @return
+	 */
+	public static BatchOutput zip(OutputStream out_stream) {
+		return new ZipOutput(out_stream);
+	}
+
+}
+
+
+class DirectoryOutput extends BatchOutput
+{
+	private final File dir;
+
+	DirectoryOutput(File dir) {
+		this.dir = dir;
+	}
+
+	@Override
+	public void write(String name, byte[] contents) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Unable create directory " + dir);
+		}
+		OutputStream out_stream = new FileOutputStream(new File(dir, name));
+		try {
+			out_stream.write(contents);
+		} finally {
+			out_stream.close();
+		}
+	}
+}
+
+
+class ZipOutput extends BatchOutput
+{
+	private final ZipOutputStream zip_stream;
+
+	ZipOutput(OutputStream out_stream) {
+		this.zip_stream = new ZipOutputStream(out_stream);
+	}
+
+	@Override
+	public synchronized void write(String name, byte[] contents)
+			throws IOException {
+		zip_stream.putNextEntry(new ZipEntry(name));
+		zip_stream.write(contents);
+		zip_stream.closeEntry();
+	}
+
+	@Override
+	public synchronized void finish() throws IOException {
+		zip_stream.finish();
+		zip_stream.flush();
+	}
+}
@@ -0,0 +1,312 @@
+package com.example.mytextpdf.utils;
+
+import com.example.mytextpdf.contract.JyrPdfDO;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量生成 PDF 文档
+ *
+ * 用一个编译好的模板处理一批数据记录，记录在固定大小的线程池中并行生成，
+ * 等待处理的记录数有上限，数据源读得比生成快时会阻塞读取线程(背压)，
+ * 所以可以处理任意大小的 NDJSON 文件而不会占满内存。
+ * 处理完成后返回 BatchSummary 统计结果。
+ */
+public class BatchRenderer
+{
+	private static final int MAX_FAILURES = 100;
+
+	private final CompiledTemplate template;
+	private int threads;
+	private int queue_size;
+	private ValuePath name_path = null;
+
+	public BatchRenderer(CompiledTemplate template) {
+		this.template = template;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.queue_size = threads * 4;
+	}
+
+	/**
+	 * 设置工作线程数量，默认为 CPU 核数
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * 设置最多可以排队等待生成的记录数，默认为线程数的 4 倍
+	 * @param queue_size
+	 */
+	public void setQueueSize(int queue_size) {
+		this.queue_size = Math.max(1, queue_size);
+	}
+
+	/**
+	 * 设置用于命名输出文件的数据键，例如 contractNo，
+	 * 未设置或记录中没有这个键时使用记录序号命名。
+	 * 名称(不区分大小写)与之前的文档重复时在后面加上 "-记录序号"
+	 * @param name_key 'data' 对象中的键，也可以是 a.b 这样的路径
+	 */
+	public void setNameKey(String name_key) {
+		this.name_path = name_key == null ? null : ValuePath.compile(name_key);
+	}
+
+	/**
+	 * 处理 NDJSON 文件，每一行是一个与模板 JSON 格式相同的对象
+	 * @param ndjson_file NDJSON 文件
+	 * @param output 输出目标
+	 * @return 统计结果
+	 * @throws IOException
+	 */
+	public BatchSummary renderNDJSON(File ndjson_file, BatchOutput output)
+			throws IOException {
+		InputStream in_stream = new FileInputStream(ndjson_file);
+		try {
+			return renderNDJSON(in_stream, output);
+		} finally {
+			in_stream.close();
+		}
+	}
+
+	/**
+	 * 处理 NDJSON 数据流，JSON 的解析也在工作线程中进行
+	 * @param ndjson_stream NDJSON 数据流，UTF-8 编码
+	 * @param output 输出目标
+	 * @return 统计结果
+	 * @throws IOException
+	 */
+	public BatchSummary renderNDJSON(InputStream ndjson_stream,
+			BatchOutput output) throws IOException {
+		final BufferedReader reader = new BufferedReader(
+				new InputStreamReader(ndjson_stream, "UTF-8"));
+
+		return render(new Iterator<Object>() {
+			String next_line = readLine();
+
+			private String readLine() {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.trim().length() > 0) {
+							return line;
+						}
+					}
+					return null;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next_line != null;
+			}
+
+			@Override
+			public Object next() {
+				if (next_line == null) {
+					throw new NoSuchElementException();
+				}
+				String line = next_line;
+				next_line = readLine();
+				return line;
+			}
+		}, output);
+	}
+
+	/**
+	 * 处理一组 Map 记录，每个记录包含 'title' 和 'data' 键
+	 * @param records 数据记录
+	 * @param output 输出目标
+	 * @return 统计结果
+	 * @throws IOException
+	 */
+	public BatchSummary renderMaps(Iterator<? extends Map<?, ?>> records,
+			BatchOutput output) throws IOException {
+		return render(records, output);
+	}
+
+	/**
+	 * 处理一组 JyrPdfDO 对象
+	 * @param records 数据对象
+	 * @param output 输出目标
+	 * @return 统计结果
+	 * @throws IOException
+	 */
+	public BatchSummary renderBeans(List<JyrPdfDO> records,
+			BatchOutput output) throws IOException {
+		return render(records.iterator(), output);
+	}
+
+	private BatchSummary render(Iterator<?> records, BatchOutput output)
+			throws IOException {
+		BatchRun run = new BatchRun(output);
+		long start = System.nanoTime();
+		int index = 0;
+
+		try {
+			while (records.hasNext()) {
+				run.submit(index++, records.next());
+			}
+		} catch (UncheckedIOException e) {
+			run.abort();
+			throw e.getCause();
+		} finally {
+			run.await();
+		}
+		output.finish();
+
+		return new BatchSummary(index, run.failed.get(),
+				System.nanoTime() - start, run.getLatencies(), run.failures);
+	}
+
+	/**
+	 * 将记录转换为数据源，Java 对象直接读取属性，不转换为 JSON
+	 */
+	private DataSource toDataSource(Object record) throws Exception {
+		if (record instanceof DataSource) {
+			return (DataSource) record;
+		}
+		if (record instanceof Map) {
+			return DataSource.fromMap((Map<?, ?>) record);
+		}
+		if (record instanceof String) {
+			return template.parseData(new ByteArrayInputStream(
+					((String) record).getBytes("UTF-8")));
+		}
+		if (record == null) {
+			throw new IllegalArgumentException("Null record");
+		}
+		return DataSource.fromBean(record);
+	}
+
+	/**
+	 * 不含扩展名的输出文件名
+	 */
+	private String outputName(int index, DataSource data_source) {
+		if (name_path != null) {
+			Object data = data_source.getData();
+			Object value = data == null ? null : name_path.resolve(data);
+			if (value != null && value != ValuePath.NOT_FOUND) {
+				String name = value.toString().replaceAll(
+						"[\\\\/:*?\"<>|\\s]", "_");
+				if (name.length() > 0) {
+					return name;
+				}
+			}
+		}
+		return String.format("%08d", index);
+	}
+
+	/**
+	 * 一次批量处理的运行状态
+	 */
+	private class BatchRun
+	{
+		final BatchOutput output;
+		final ExecutorService executor;
+		final Semaphore permits;
+		final AtomicInteger failed = new AtomicInteger();
+		final List<String> failures =
+				Collections.synchronizedList(new ArrayList<String>());
+		// 已经使用的文件名，小写
+		final Set<String> names = new HashSet<String>();
+		long[] latencies = new long[1024];
+		int latency_count = 0;
+
+		BatchRun(BatchOutput output) {
+			this.output = output;
+			this.permits = new Semaphore(threads + queue_size);
+			this.executor = Executors.newFixedThreadPool(threads,
+					new ThreadFactory() {
+						final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"textpdf-batch-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+
+		void submit(final int index, final Object record)
+				throws IOException {
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long start = System.nanoTime();
+						DataSource data_source = toDataSource(record);
+						ByteArrayOutputStream buffer =
+								new ByteArrayOutputStream(64 * 1024);
+						template.renderPDF(data_source, buffer);
+						output.write(uniqueName(index,
+								outputName(index, data_source)),
+								buffer.toByteArray());
+						addLatency(System.nanoTime() - start);
+					} catch (Exception ex) {
+						failed.incrementAndGet();
+						if (failures.size() < MAX_FAILURES) {
+							failures.add("record " + index + ": " + ex);
+						}
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		}
+
+		/**
+		 * 名称重复时在后面加上记录序号，避免覆盖之前的文件或者
+		 * ZIP 中出现重复的条目
+		 */
+		synchronized String uniqueName(int index, String name) {
+			String unique = name;
+			for (int i = 1; !names.add(unique.toLowerCase()); i++) {
+				unique = name + "-" + index + (i > 1 ? "-" + i : "");
+			}
+			return unique + ".pdf";
+		}
+
+		synchronized void addLatency(long nanos) {
+			if (latency_count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, latency_count * 2);
+			}
+			latencies[latency_count++] = nanos;
+		}
+
+		synchronized long[] getLatencies() {
+			return Arrays.copyOf(latencies, latency_count);
+		}
+
+		void abort() {
+			executor.shutdownNow();
+		}
+
+		void await() throws IOException {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.example.mytextpdf.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量生成的统计结果：吞吐量、失败数以及每条记录的耗时分布
+ */
+public class BatchSummary
+{
+	private final int total;
+	private final int failed;
+	private final long elapsed_nanos;
+	private final long[] latencies;
+	private final List<String> failures;
+
+	BatchSummary(int total, int failed, long elapsed_nanos,
+			long[] latencies, List<String> failures) {
+		this.total = total;
+		this.failed = failed;
+		this.elapsed_nanos = elapsed_nanos;
+		this.latencies = latencies.clone();
+		Arrays.sort(this.latencies);
+		this.failures = Collections.unmodifiableList(
+				new ArrayList<String>(failures));
+	}
+
+	/**
+	 * 处理的记录总数
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * 成功生成的文档数
+	 */
+	public int getSucceeded() {
+		return total - failed;
+	}
+
+	/**
+	 * 失败的记录数
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * 失败记录的说明(只保留前面的一部分)
+	 */
+	public List<String> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * 总耗时，毫秒
+	 */
+	public long getElapsedMillis() {
+		return elapsed_nanos / 1000000L;
+	}
+
+	/**
+	 * 吞吐量，每秒生成的文档数
+	 */
+	public double getThroughput() {
+		if (elapsed_nanos <= 0) {
+			return 0;
+		}
+		return getSucceeded() * 1.0e9 / elapsed_nanos;
+	}
+
+	/**
+	 * 单条记录耗时的百分位数，毫秒
+	 * @param percentile 百分位，例如 50、99、99.9
+	 * @return
+	 */
+	public double getLatencyMillis(double percentile) {
+		if (latencies.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+		index = Math.max(0, Math.min(latencies.length - 1, index));
+		return latencies[index] / 1.0e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("total=%d, succeeded=%d, failed=%d, "
+				+ "elapsed=%dms, throughput=%.1f/s, "
+				+ "latency p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+				total, getSucceeded(), failed, getElapsedMillis(),
+				getThroughput(), getLatencyMillis(50), getLatencyMillis(90),
+				getLatencyMillis(99), getLatencyMillis(100));
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.example.mytextpdf.utils;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 读取 Java 对象的属性
+ *
+ * 每个类第一次用到时查找它的 getter 并转换为 MethodHandle，
+ * 之后按属性名直接调用，不再使用反射查找。
+ */
+class BeanProperties
+{
+	private static final ClassValue<Map<String, MethodHandle>> getters =
+			new ClassValue<Map<String, MethodHandle>>() {
+				@Override
+				protected Map<String, MethodHandle> computeValue(Class<?> type) {
+					return findGetters(type);
+				}
+			};
+
+	private static final MethodType GETTER_TYPE =
+			MethodType.methodType(Object.class, Object.class);
+
+	private BeanProperties() {
+	}
+
+	/**
+	 * 是否按 Java 对象读取属性，JDK 自带的类型(String、Number 等)除外
+	 */
+	static boolean isBean(Object object) {
+		if (object == null) {
+			return false;
+		}
+		String name = object.getClass().getName();
+		return !name.startsWith("java.") && !name.startsWith("javax.");
+	}
+
+	/**
+	 * 读取属性
+	 * @return 没有这个属性时返回 ValuePath.NOT_FOUND
+	 */
+	static Object get(Object bean, String name) {
+		if (!isBean(bean)) {
+			return ValuePath.NOT_FOUND;
+		}
+		MethodHandle getter = getters.get(bean.getClass()).get(name);
+		if (getter == null) {
+			return ValuePath.NOT_FOUND;
+		}
+		try {
+			return getter.invokeExact(bean);
+		} catch (RuntimeException ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			throw new IllegalStateException("Read property '" + name
+					+ "' failed.", ex);
+		}
+	}
+
+	private static Map<String, MethodHandle> findGetters(Class<?> type) {
+		Map<String, MethodHandle> map = new HashMap<String, MethodHandle>();
+		try {
+			BeanInfo info = Introspector.getBeanInfo(type, Object.class);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			for (PropertyDescriptor property : info.getPropertyDescriptors()) {
+				Method method = property.getReadMethod();
+				if (method == null) {
+					continue;
+				}
+				if (!Modifier.isPublic(method.getDeclaringClass()
+						.getModifiers())) {
+					method.setAccessible(true);
+				}
+				map.put(property.getName(),
+						lookup.unreflect(method).asType(GETTER_TYPE));
+			}
+		} catch (Exception ex) {
+			System.err.println("Unable read properties of "
+					+ type.getName() + ": " + ex);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * title、chapter、section、para 等块
+ */
+class BlockNode extends TemplateNode
+{
+	final String block_name;
+	final List<ChunkNode> chunks;
+
+	BlockNode(String block_name, List<ChunkNode> chunks) {
+		this.block_name = block_name;
+		this.chunks = Collections.unmodifiableList(
+				new ArrayList<ChunkNode>(chunks));
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		List<TextChunk> chunk_list = new ArrayList<TextChunk>(chunks.size());
+		for (ChunkNode node : chunks) {
+			chunk_list.add(node.toTextChunk(context));
+		}
+		context.text_doc.writeBlock(block_name, chunk_list);
+	}
+
+	@Override
+	void collectPaths(List<PathTrie> scopes) {
+		for (ChunkNode node : chunks) {
+			node.collectPaths(scopes);
+		}
+	}
+
+	@Override
+	boolean isStatic() {
+		for (ChunkNode node : chunks) {
+			if (!node.isStatic()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+		for (ChunkNode node : chunks) {
+			node.fingerprint(context, digest);
+		}
+	}
+}
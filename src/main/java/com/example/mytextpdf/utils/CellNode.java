@@ -0,0 +1,36 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 表格单元格
+ */
+class CellNode extends TemplateNode
+{
+	final ChunkNode chunk;
+
+	CellNode(ChunkNode chunk) {
+		this.chunk = chunk;
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		context.text_doc.addTableCell(chunk.toTextChunk(context));
+	}
+
+	@Override
+	void collectPaths(List<PathTrie> scopes) {
+		chunk.collectPaths(scopes);
+	}
+
+	@Override
+	boolean isStatic() {
+		return chunk.isStatic();
+	}
+
+	@Override
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+		chunk.fingerprint(context, digest);
+	}
+}
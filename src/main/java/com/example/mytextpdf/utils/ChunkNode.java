@@ -0,0 +1,83 @@
+package com.example.mytextpdf.utils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文本片段节点，可能是静态文本，也可能是一个 value 数据槽
+ */
+class ChunkNode
+{
+	final Map<String, String> attrs;
+	final String prefix;
+	final String contents;
+	final boolean is_value;
+	final ValuePath value_path;
+	final Map<String, String> value_attrs;
+	// 解析好的样式，生成的 TextChunk 共享
+	final TextStyle style;
+	final TextStyle value_style;
+
+	ChunkNode(Map<String, String> attrs, String contents, boolean is_value,
+			ValuePath value_path, Map<String, String> value_attrs) {
+		this(attrs, "", contents, is_value, value_path, value_attrs);
+	}
+
+	/**
+	 * @param prefix 数据之前的文本，只用于表格单元格
+	 */
+	ChunkNode(Map<String, String> attrs, String prefix, String contents,
+			boolean is_value, ValuePath value_path,
+			Map<String, String> value_attrs) {
+		// 属性相同的节点共享 TextStyle 中不可修改的属性
+		this.style = TextStyle.of(attrs);
+		this.attrs = style.attrs;
+		this.prefix = prefix;
+		this.contents = contents;
+		this.is_value = is_value;
+		this.value_path = value_path;
+		if (value_attrs == null) {
+			this.value_style = style;
+		} else {
+			this.value_style = TextStyle.of(value_attrs);
+		}
+		this.value_attrs = value_style.attrs;
+	}
+
+	TextChunk toTextChunk(RenderContext context) {
+		String value = null;
+
+		if (value_path != null) {
+			value = context.lookupValue(value_path);
+		}
+		TextChunk chunk;
+		if (value != null) {
+			chunk = new TextChunk(value_style);
+			chunk.setContents(prefix.isEmpty() && contents.isEmpty() ?
+					value : prefix + value + contents);
+		} else {
+			chunk = new TextChunk(style);
+			chunk.setContents(prefix.isEmpty() ? contents : prefix + contents);
+		}
+		chunk.setIsValue(is_value);
+		return chunk;
+	}
+
+	boolean isStatic() {
+		return value_path == null;
+	}
+
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+		if (value_path != null) {
+			digest.addValue(context.lookupValue(value_path));
+		}
+	}
+
+	void collectPaths(List<PathTrie> scopes) {
+		if (value_path != null) {
+			for (PathTrie scope : ValuePath.lookupScopes(value_path, scopes)) {
+				scope.add(value_path).setAll();
+			}
+		}
+	}
+}
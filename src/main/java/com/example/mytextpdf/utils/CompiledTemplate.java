@@ -0,0 +1,477 @@
+package com.example.mytextpdf.utils;
+
+import javax.xml.parsers.SAXParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 预编译的 XML 模板
+ *
+ * XML 模板只解析一次，生成一棵不可变的节点树(块、表格、图片、数据槽)，
+ * 属性继承等工作在编译时完成。之后可以用不同的 JSON 数据多次生成文档，
+ * 生成过程中不再解析 XML。编译后的对象可以被多个线程共享。
+ *
+ * value 元素的 id 可以是 buyer.accounts[0].no 这样的路径。
+ * repeat 元素对 path 指定的 JSON 数组中的每个元素输出一次其中的内容，
+ * 可以包含块、表格，也可以放在 table 中包含若干 cell 以生成表格行，
+ * 其中的路径先在数组元素中查找，找不到时再到外层数据中查找。
+ *
+ * 两个 pagebreak(或 page)之间不包含 value、repeat 的部分是静态段，
+ * 打开 setStaticPageCache() 后生成 PDF 时静态段只排版一次，
+ * 之后的文档直接引用排版好的页面。
+ */
+public class CompiledTemplate
+{
+	private final List<TemplateNode> nodes;
+	// JSON 中模板需要的部分
+	private final PathTrie json_paths;
+	private volatile boolean page_cache = false;
+	private volatile SegmentCache segment_cache = null;
+	private volatile String name = null;
+
+	CompiledTemplate(List<TemplateNode> nodes) {
+		this.nodes = Collections.unmodifiableList(groupSegments(nodes));
+
+		json_paths = new PathTrie();
+		json_paths.addKey("title").setAll();
+		List<PathTrie> scopes = new ArrayList<PathTrie>();
+		scopes.add(json_paths.addKey("data"));
+		for (TemplateNode node : nodes) {
+			node.collectPaths(scopes);
+		}
+	}
+
+	/**
+	 * 将 pagebreak 之间的节点合并为 SegmentNode
+	 */
+	private static List<TemplateNode> groupSegments(
+			List<TemplateNode> nodes) {
+		List<TemplateNode> result = new ArrayList<TemplateNode>();
+		List<TemplateNode> segment = new ArrayList<TemplateNode>();
+		boolean is_static = true;
+
+		for (TemplateNode node : nodes) {
+			if (node instanceof PageBreakNode || node instanceof PageNode) {
+				addSegment(result, segment, is_static);
+				result.add(node);
+				segment.clear();
+				is_static = true;
+			} else {
+				segment.add(node);
+				is_static = is_static && node.isStatic();
+			}
+		}
+		addSegment(result, segment, is_static);
+		return result;
+	}
+
+	private static void addSegment(List<TemplateNode> result,
+			List<TemplateNode> segment, boolean is_static) {
+		if (segment.isEmpty()) {
+			return;
+		}
+		result.add(new SegmentNode(segment, is_static));
+	}
+
+	/**
+	 * 是否缓存静态段的排版结果，默认关闭
+	 *
+	 * 第一次生成时静态段要单独排版再放入文档，比直接排版慢，
+	 * 每一段还会单独嵌入字体子集，页面中的注释和链接也不会保留，
+	 * 所以只适合用同一个模板生成很多文档、并且可以接受这些限制的情况，
+	 * 需要时也可以通过 TextPdfEngine.Builder.setStaticPageCache() 开启。
+	 * @param enabled
+	 */
+	public void setStaticPageCache(boolean enabled) {
+		this.page_cache = enabled;
+	}
+
+	/**
+	 * 设置段排版结果缓存，包含数据的段按用到的数据计算指纹，
+	 * 数据没有变化的段直接使用缓存的页面，默认不使用
+	 * @param segment_cache 可以被多个模板共享，null 表示不使用
+	 */
+	public void setSegmentCache(SegmentCache segment_cache) {
+		this.segment_cache = segment_cache;
+	}
+
+	/**
+	 * 设置模板名称，用于 JFR 事件中区分不同的模板
+	 * @param name
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 编译 XML 模板
+	 * @param xml_stream XML 模板数据流
+	 * @return 编译后的模板
+	 * @throws Exception
+	 */
+	public static CompiledTemplate compile(InputStream xml_stream)
+			throws Exception {
+		return compile(xml_stream, null);
+	}
+
+	/**
+	 * 编译 XML 模板
+	 * @param xml_stream XML 模板数据流
+	 * @param name 模板名称，例如文件名，可以为 null
+	 * @return 编译后的模板
+	 * @throws Exception
+	 */
+	public static CompiledTemplate compile(InputStream xml_stream,
+			String name) throws Exception {
+		RenderMetrics metrics = RenderMetrics.get();
+		long start = metrics.start();
+		Object event = RenderEvents.INSTANCE.begin(
+				RenderEvents.TEMPLATE_PARSE);
+		CountingInputStream counter = null;
+		if (event != null) {
+			counter = new CountingInputStream(xml_stream);
+			xml_stream = counter;
+		}
+		SAXParser parser = SAXParserPool.acquire();
+		try {
+			TemplateHandler handler = new TemplateHandler();
+			parser.parse(xml_stream, handler);
+			CompiledTemplate template = handler.getTemplate();
+			template.name = name;
+			if (counter != null) {
+				RenderEvents.INSTANCE.commitTemplateParse(event, name,
+						counter.count, template.nodes.size());
+			}
+			return template;
+		} finally {
+			SAXParserPool.release(parser);
+			metrics.stop(RenderMetrics.PHASE_TEMPLATE, start);
+		}
+	}
+
+	/**
+	 * 解析 JSON 数据，只保留模板中用到的数据，其它部分直接跳过
+	 * @param json_stream UTF-8 编码的 JSON 数据流
+	 * @return 数据源，包含跳过和解析的字节数
+	 * @throws IOException
+	 */
+	public JSONDataSource parseData(InputStream json_stream)
+			throws IOException {
+		RenderMetrics metrics = RenderMetrics.get();
+		long start = metrics.start();
+		Object event = RenderEvents.INSTANCE.begin(RenderEvents.DATA_BIND);
+		try {
+			JSONDataSource data_source =
+					new JSONDataSource(json_stream, json_paths);
+			RenderEvents.INSTANCE.commitDataBind(event, name,
+					data_source.getTotalBytes(),
+					data_source.getSkippedBytes(),
+					data_source.getBoundBytes());
+			return data_source;
+		} finally {
+			metrics.stop(RenderMetrics.PHASE_JSON, start);
+		}
+	}
+
+	/**
+	 * 使用 JSON 数据生成 PDF 文档
+	 * @param json_object JSON 数据，可以为 null
+	 * @param out_stream 输出流
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats renderPDF(Map<?, ?> json_object,
+			OutputStream out_stream) throws IOException {
+		return render(new PDFDoc(out_stream), DataSource.fromMap(json_object));
+	}
+
+	/**
+	 * 使用数据源生成 PDF 文档
+	 * @param data_source 数据源
+	 * @param out_stream 输出流
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats renderPDF(DataSource data_source,
+			OutputStream out_stream) throws IOException {
+		return render(new PDFDoc(out_stream), data_source);
+	}
+
+	/**
+	 * 使用 JSON 数据生成 HTML 文档
+	 * @param json_object JSON 数据，可以为 null
+	 * @param out_stream 输出流
+	 * @throws IOException
+	 */
+	public void renderHTML(Map<?, ?> json_object, OutputStream out_stream)
+			throws IOException {
+		render(new HTMLDoc(out_stream), DataSource.fromMap(json_object));
+	}
+
+	/**
+	 * 使用 JSON 数据生成文档，文档对象由调用者创建并设置好参数
+	 * @param text_doc 输出文档，PDFDoc 或 HTMLDoc
+	 * @param json_object JSON 数据，可以为 null
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(TextDoc text_doc, Map<?, ?> json_object)
+			throws IOException {
+		return render(text_doc, DataSource.fromMap(json_object));
+	}
+
+	/**
+	 * 使用数据源生成文档，文档对象由调用者创建并设置好参数
+	 * @param text_doc 输出文档，PDFDoc 或 HTMLDoc
+	 * @param data_source 数据源
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(TextDoc text_doc, DataSource data_source)
+			throws IOException {
+		RenderContext context = new RenderContext(text_doc, data_source);
+		context.page_cache = page_cache;
+		context.segment_cache = segment_cache;
+
+		RenderMetrics metrics = RenderMetrics.get();
+		Object render_event = beginDocument(text_doc);
+		CountingOutputStream counter = countOutput(metrics, text_doc,
+				render_event);
+		long start = metrics.start();
+		if (!text_doc.open()) {
+			throw new IOException("Open document failed.");
+		}
+		for (TemplateNode node : nodes) {
+			node.render(context);
+		}
+		metrics.stop(RenderMetrics.PHASE_LAYOUT, start);
+		closeDocument(metrics, text_doc, counter, render_event);
+		return context.cache_stats;
+	}
+
+	private Object beginDocument(TextDoc text_doc) {
+		if (name != null) {
+			text_doc.template_name = name;
+		}
+		return RenderEvents.INSTANCE.begin(RenderEvents.DOCUMENT_RENDER);
+	}
+
+	/**
+	 * 需要统计或者记录事件时统计文档输出的字节数
+	 * @return 不需要时返回 null
+	 */
+	private static CountingOutputStream countOutput(RenderMetrics metrics,
+			TextDoc text_doc, Object render_event) {
+		if ((!metrics.isEnabled() && render_event == null)
+				|| text_doc.out_stream == null) {
+			return null;
+		}
+		CountingOutputStream counter =
+				new CountingOutputStream(text_doc.out_stream);
+		text_doc.out_stream = counter;
+		return counter;
+	}
+
+	/**
+	 * 关闭文档，记录统计和事件
+	 */
+	private static void closeDocument(RenderMetrics metrics,
+			TextDoc text_doc, CountingOutputStream counter,
+			Object render_event) throws IOException {
+		long start = metrics.start();
+		Object close_event = RenderEvents.INSTANCE.begin(
+				RenderEvents.DOCUMENT_CLOSE);
+		try {
+			text_doc.close();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		metrics.stop(RenderMetrics.PHASE_CLOSE, start);
+		if (counter == null) {
+			return;
+		}
+		String type;
+		int pages;
+		if (text_doc instanceof PDFDoc) {
+			type = RenderMetrics.TYPE_PDF;
+			pages = ((PDFDoc) text_doc).getPageCount();
+		} else {
+			type = RenderMetrics.TYPE_HTML;
+			pages = 0;
+		}
+		RenderEvents.INSTANCE.commitDocument(close_event,
+				text_doc.template_name, type, pages, counter.count);
+		RenderEvents.INSTANCE.commitDocument(render_event,
+				text_doc.template_name, type, pages, counter.count);
+		if (metrics.isEnabled()) {
+			metrics.recordDocument(type, pages, counter.count);
+		}
+	}
+
+	/**
+	 * 使用数据源并行生成 PDF 文档
+	 * @param data_source 数据源
+	 * @param out_stream 输出流
+	 * @param executor 排版各段使用的线程池
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats renderPDF(DataSource data_source,
+			OutputStream out_stream, ExecutorService executor)
+					throws IOException {
+		return render(new PDFDoc(out_stream), data_source, executor);
+	}
+
+	/**
+	 * 并行生成 PDF 文档
+	 *
+	 * pagebreak 和 page 分隔的各段排版互不影响，各段在 executor 中
+	 * 同时排版到单独的缓冲区，再按顺序放入最终文档。
+	 * 页码、"第 X 页 共 Y 页"、水印等在放入时由最终文档添加，
+	 * 所以与顺序生成的结果相同。适合由很多 pagebreak 分隔的长文档。
+	 * 调用者自己不能运行在 executor 中，否则线程池满时会互相等待。
+	 * @param pdf_doc 输出文档，由调用者创建并设置好参数
+	 * @param data_source 数据源
+	 * @param executor 排版各段使用的线程池
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(PDFDoc pdf_doc,
+			final DataSource data_source, ExecutorService executor)
+					throws IOException {
+		RenderContext context = new RenderContext(pdf_doc, data_source);
+		context.page_cache = page_cache;
+		context.segment_cache = segment_cache;
+
+		RenderMetrics metrics = RenderMetrics.get();
+		Object render_event = beginDocument(pdf_doc);
+		CountingOutputStream counter = countOutput(metrics, pdf_doc,
+				render_event);
+		long start = metrics.start();
+
+		// 按顺序提交各段的排版任务，page 元素改变之后各段的页面参数
+		PDFDoc layout_state = pdf_doc.createLayoutCopy(null);
+		List<SegmentTask> tasks = new ArrayList<SegmentTask>(nodes.size());
+		try {
+			for (TemplateNode node : nodes) {
+				if (node instanceof PageNode) {
+					((PageNode) node).apply(layout_state);
+				}
+				if (!(node instanceof SegmentNode)) {
+					tasks.add(null);
+					continue;
+				}
+				final SegmentNode segment = (SegmentNode) node;
+				final SegmentTask task = new SegmentTask(
+						layout_state.createLayoutCopy(null));
+				if (segment.is_static && page_cache) {
+					task.pages = segment.getCachedPages(task.layout_doc,
+							context);
+				} else if (!segment.is_static && context.segment_cache != null) {
+					task.key = segment.fingerprint(task.layout_doc, context);
+					task.pages = context.segment_cache.get(task.key);
+				}
+				if (task.pages != null) {
+					tasks.add(task);
+					continue;
+				}
+				task.future = executor.submit(new Callable<SegmentPages>() {
+					@Override
+					public SegmentPages call() {
+						return segment.layout(task.layout_doc,
+								segment.is_static ?
+										DataSource.of(null, null) : data_source);
+					}
+				});
+				tasks.add(task);
+			}
+
+			if (!pdf_doc.open()) {
+				throw new IOException("Open document failed.");
+			}
+			for (int i = 0; i < nodes.size(); i++) {
+				TemplateNode node = nodes.get(i);
+				SegmentTask task = tasks.get(i);
+				if (task == null) {
+					node.render(context);
+					continue;
+				}
+				SegmentNode segment = (SegmentNode) node;
+				if (task.future != null) {
+					task.pages = task.get();
+					if (task.pages != null && segment.is_static && page_cache) {
+						segment.putCachedPages(task.layout_doc, context,
+								task.pages);
+					} else if (task.pages != null && task.key != null) {
+						context.segment_cache.put(task.key, task.pages);
+					}
+				}
+				if (task.pages == null) {
+					// 单独排版失败，在文档中直接排版
+					segment.renderChildren(context);
+				} else {
+					task.pages.addTo(pdf_doc);
+				}
+			}
+			metrics.stop(RenderMetrics.PHASE_LAYOUT, start);
+			closeDocument(metrics, pdf_doc, counter, render_event);
+		} finally {
+			for (SegmentTask task : tasks) {
+				if (task != null && task.future != null) {
+					task.future.cancel(true);
+				}
+			}
+		}
+		return context.cache_stats;
+	}
+
+	/**
+	 * 并行生成时一段的排版任务
+	 */
+	private static class SegmentTask
+	{
+		final PDFDoc layout_doc;
+		// 段缓存中的键
+		String key = null;
+		Future<SegmentPages> future = null;
+		SegmentPages pages = null;
+
+		SegmentTask(PDFDoc layout_doc) {
+			this.layout_doc = layout_doc;
+		}
+
+		SegmentPages get() throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package com.example.mytextpdf.utils;
+
+import org.json.simple.parser.JSONParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+/**
+ * 模板数据源
+ *
+ * 提供文档标题和 'data' 数据，模板中的 value、repeat 在 'data' 中查找。
+ * 数据可以是 Map/List(例如解析后的 JSON)，也可以是普通的 Java 对象，
+ * Java 对象的属性通过 getter 读取，每个类的 getter 只查找一次。
+ * 调用者已经有 Java 对象时直接使用 fromBean()，不需要先转换为 JSON。
+ */
+public abstract class DataSource
+{
+	/**
+	 * 文档标题，没有时返回 null
+	 */
+	public abstract String getTitle();
+
+	/**
+	 * 'data' 数据，没有时返回 null
+	 */
+	public abstract Object getData();
+
+	/**
+	 * 使用 JSON 格式的 Map，包含 'title' 和 'data' 键
+	 * @param json_object 可以为 null
+	 * @return
+	 */
+	public static DataSource fromMap(Map<?, ?> json_object) {
+		return new MapDataSource(json_object);
+	}
+
+	/**
+	 * 解析 JSON 数据流
+	 * @param json_stream UTF-8 编码的 JSON 数据流，可以为 null
+	 * @return
+	 * @throws IOException
+	 */
+	public static DataSource fromJSON(InputStream json_stream)
+			throws IOException {
+		if (json_stream == null) {
+			return new MapDataSource(null);
+		}
+		try {
+			InputStreamReader reader =
+					new InputStreamReader(json_stream, "UTF-8");
+			JSONParser json_parser = new JSONParser();
+			return new MapDataSource((Map<?, ?>) json_parser.parse(
+					new BufferedReader(reader)));
+		} catch (Exception ex) {
+			throw new IOException("Failed to parse JSON stream", ex);
+		}
+	}
+
+	/**
+	 * 使用有 getTitle() 和 getData() 的 Java 对象，例如 JyrPdfDO
+	 * @param bean
+	 * @return
+	 */
+	public static DataSource fromBean(Object bean) {
+		Object title = BeanProperties.get(bean, "title");
+		Object data = BeanProperties.get(bean, "data");
+		return new SimpleDataSource(
+				title instanceof String ? (String) title : null,
+				data == ValuePath.NOT_FOUND ? null : data);
+	}
+
+	/**
+	 * 直接指定标题和数据
+	 * @param title 标题
+	 * @param data Map 或 Java 对象
+	 * @return
+	 */
+	public static DataSource of(String title, Object data) {
+		return new SimpleDataSource(title, data);
+	}
+
+}
+
+
+class MapDataSource extends DataSource
+{
+	private final Map<?, ?> json_object;
+
+	MapDataSource(Map<?, ?> json_object) {
+		this.json_object = json_object;
+	}
+
+	@Override
+	public String getTitle() {
+		if (json_object != null) {
+			Object value = json_object.get("title");
+			if (value instanceof String) {
+				return (String) value;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object getData() {
+		if (json_object == null) {
+			return null;
+		}
+		if (!json_object.containsKey("data")) {
+			System.err.println("JSON source missing 'data' key, please check!");
+			return null;
+		}
+		Object value = json_object.get("data");
+		if (!(value instanceof Map)) {
+			System.err.println("JSON 'data' must be a object.");
+			return null;
+		}
+		return value;
+	}
+}
+
+
+class SimpleDataSource extends DataSource
+{
+	private final String title;
+	private final Object data;
+
+	SimpleDataSource(String title, Object data) {
+		this.title = title;
+		this.data = data;
+	}
+
+	@Override
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public Object getData() {
+		return data;
+	}
+}
@@ -143,16 +143,7 @@ public class DocReader
 	}
 
 	private String textEscape(String text) {
-		StringBuilder builder = new StringBuilder();
-		for (int i = 0; i < text.length(); i++) {
-			String escape = Util.escapeXMLChars(text.charAt(i));
-			if (escape != null) {
-				builder.append(escape);
-			} else {
-				builder.append(text.charAt(i));
-			}
-		}
-		return builder.toString();
+		return Util.escapeXMLString(text);
 	}
 
 	private void readCharacterRuns(Paragraph para, int para_index,
@@ -0,0 +1,154 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.BaseFont;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程级字体注册表
+ *
+ * 每一种字体在 JVM 中只加载、解析一次，之后所有的 PDFDoc 和 PDFProcess
+ * 共享同一个 BaseFont 对象。字体文件的查找顺序为：
+ * 1. setFontDirectory() 或系统属性 textpdf.font.dir 指定的目录；
+ * 2. classpath 下的 font/ 目录；
+ * 3. 工程目录 src/main/resources/font/（兼容之前的行为）。
+ */
+public class FontRegistry
+{
+	public static final String FONT_DIR_PROPERTY = "textpdf.font.dir";
+
+	public static final String FONT_HEI = "SIMHEI.TTF";
+	public static final String FONT_SONG = "SIMSUN.TTC,0";
+
+	private static final String CLASSPATH_FONT_DIR = "font/";
+
+	private static final Map<String, BaseFont> fonts =
+			new ConcurrentHashMap<String, BaseFont>();
+	private static final AtomicLong loaded_bytes = new AtomicLong();
+	private static volatile String font_dir =
+			System.getProperty(FONT_DIR_PROPERTY);
+
+	private FontRegistry() {
+	}
+
+	/**
+	 * 设置字体文件目录，只影响之后首次加载的字体
+	 * @param dir 目录路径，null 表示使用 classpath
+	 */
+	public static void setFontDirectory(String dir) {
+		font_dir = dir;
+	}
+
+	/**
+	 * 根据字体家族(PDFDoc.FONT_FAMILY_XXX)取得共享的字体
+	 * @param font_family 字体家族
+	 * @return 字体对象，未知的字体家族返回 null
+	 * @throws IOException
+	 */
+	public static BaseFont getBaseFont(int font_family) throws IOException {
+		switch (font_family) {
+		case PDFDoc.FONT_FAMILY_HEI:
+			return getBaseFont(FONT_HEI);
+		case PDFDoc.FONT_FAMILY_SONG:
+			return getBaseFont(FONT_SONG);
+		}
+		return null;
+	}
+
+	/**
+	 * 根据字体文件名取得共享的字体，TTC 字体需要在文件名后加 ",序号"
+	 * @param name 字体文件名，例如 SIMSUN.TTC,0
+	 * @return 字体对象
+	 * @throws IOException
+	 */
+	public static BaseFont getBaseFont(String name) throws IOException {
+		BaseFont base_font = fonts.get(name);
+		RenderMetrics.get().recordCache(RenderMetrics.CACHE_BASE_FONT,
+				base_font != null);
+		if (base_font != null) {
+			return base_font;
+		}
+		synchronized (fonts) {
+			base_font = fonts.get(name);
+			if (base_font == null) {
+				base_font = loadFont(name);
+				fonts.put(name, base_font);
+			}
+		}
+		return base_font;
+	}
+
+	/**
+	 * 已加载的字体数量
+	 */
+	public static int getLoadedFontCount() {
+		return fonts.size();
+	}
+
+	/**
+	 * 已加载的字体文件占用的字节数
+	 */
+	public static long getLoadedFontBytes() {
+		return loaded_bytes.get();
+	}
+
+	private static BaseFont loadFont(String name) throws IOException {
+		String filename = name;
+		int index = name.toLowerCase().indexOf(".ttc,");
+		if (index > 0) {
+			filename = name.substring(0, index + 4);
+		}
+		Object event = RenderEvents.INSTANCE.begin(RenderEvents.FONT_LOAD);
+		byte[] bytes = readFontFile(filename);
+		try {
+			BaseFont base_font = BaseFont.createFont(name,
+					BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, bytes, null);
+			loaded_bytes.addAndGet(bytes.length);
+			RenderEvents.INSTANCE.commitFontLoad(event, name, bytes.length);
+			return base_font;
+		} catch (DocumentException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static byte[] readFontFile(String filename) throws IOException {
+		String dir = font_dir;
+		if (dir != null) {
+			return readFully(new FileInputStream(new File(dir, filename)));
+		}
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if (loader == null) {
+			loader = FontRegistry.class.getClassLoader();
+		}
+		InputStream stream = loader.getResourceAsStream(
+				CLASSPATH_FONT_DIR + filename);
+		if (stream != null) {
+			return readFully(stream);
+		}
+		return readFully(new FileInputStream(
+				PDFContant.resourcePath + CLASSPATH_FONT_DIR + filename));
+	}
+
+	private static byte[] readFully(InputStream stream) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = stream.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+}
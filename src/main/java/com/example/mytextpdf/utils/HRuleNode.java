@@ -0,0 +1,28 @@
+package com.example.mytextpdf.utils;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+
+/**
+ * hrule 元素
+ */
+class HRuleNode extends TemplateNode
+{
+	final Attributes attrs;
+
+	HRuleNode(Attributes attrs) {
+		this.attrs = new AttributesImpl(attrs);
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		context.text_doc.addHRule(attrs);
+	}
+
+	@Override
+	boolean isStatic() {
+		return true;
+	}
+}
@@ -3,12 +3,12 @@ package com.example.mytextpdf.utils;
 import org.json.simple.JSONObject;
 import org.xml.sax.Attributes;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.*;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 输出 HTML 文档
@@ -20,13 +20,19 @@ public class HTMLDoc extends TextDoc
 
 	private boolean is_open = false;
 	private JSONObject json_object;
+	private String title = null;
 	private List<String> css_paths;
 	private List<String> js_paths;
 	private String declare = null;
 	private String extra = null;
 	private int type = TYPE_INPUT;
 
-	private String html_open = ""
+	private Writer writer = null;
+
+	private int[] table_columns = null;
+	private int table_cell_index = 0;
+
+	private static final String html_open = ""
 			+ "<!DOCTYPE html>\n"
 			+ "<html>\n"
 			+ "  <head>\n"
@@ -41,7 +47,15 @@ public class HTMLDoc extends TextDoc
 			+ "  </head>\n"
 			+ "  <body>\n";
 
-	private String html_close = "  </body>\n</html>\n";
+	private static final String html_close = "  </body>\n</html>\n";
+
+	/**
+	 * 按配置(声明、编码、CSS、JS)缓存替换好的页面头部，
+	 * 数组的两个元素分别为标题之前和标题之后的内容
+	 */
+	private static final int MAX_HEADERS = 64;
+	private static final Map<String, String[]> header_cache =
+			new ConcurrentHashMap<String, String[]>();
 
 
 	public HTMLDoc(OutputStream out_stream) {
@@ -52,6 +66,14 @@ public class HTMLDoc extends TextDoc
 		this.json_object = json_object;
 	}
 
+	/**
+	 * 设置标题，优先于 setJSONObject() 中的 'title'
+	 * @param title
+	 */
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
 	public void setLinkPaths(List<String> css_paths, List<String> js_paths) {
 		this.css_paths = css_paths;
 		this.js_paths = js_paths;
@@ -70,65 +92,89 @@ public class HTMLDoc extends TextDoc
 	}
 
 	private boolean writeStream(String string) {
+		if (writer == null) {
+			return false;
+		}
 		try {
-			out_stream.write(string.getBytes(encoding));
+			writer.write(string);
 			return true;
-		} catch (UnsupportedEncodingException e) {
-			System.err.println("Unsupported encoding.");
-			return false;
 		} catch (IOException e) {
 			System.err.println("Write to html stream failed.");
 			return false;
 		}
 	}
 
-	private void substituteDeclare() {
-		if (declare != null) {
-			html_open = html_open.replace("<!DOCTYPE html>", declare);
+	private boolean writeText(String contents) {
+		if (writer == null) {
+			return false;
+		}
+		try {
+			Util.escapeHTML(contents, writer, true);
+			return true;
+		} catch (IOException e) {
+			System.err.println("Write to html stream failed.");
+			return false;
 		}
 	}
 
-	private void substituteTitle() {
+	private String getTitle() {
+		if (title != null) {
+			return title;
+		}
 		if (json_object != null) {
 			if (json_object.containsKey("title")) {
 				Object value = json_object.get("title");
 				if (value instanceof String) {
-					html_open = html_open.replace("__TITLE__",
-							Util.escapeHTMLString((String) value));
+					return (String) value;
 				}
 			}
 		}
-		html_open = html_open.replace("__TITLE__", "");
+		return "";
 	}
 
-	private void substituteCSSLinks() {
-		if (css_paths != null) {
-			StringBuilder builder = new StringBuilder();
-			for (String path : css_paths) {
-				builder.append("<link rel=\"stylesheet\" type=\"text/css\" href=\"");
-				builder.append(Util.escapeHTMLString(path));
-				builder.append("\"/>\n");
-			}
-			html_open = html_open.replace("__CSS_URL__",
-					builder.toString().trim());
-		} else {
-			html_open = html_open.replace("__CSS_URL__", "");
+	private static String linksString(List<String> paths,
+			String prefix, String suffix) {
+		if (paths == null) {
+			return "";
 		}
+		StringBuilder builder = new StringBuilder();
+		for (String path : paths) {
+			builder.append(prefix);
+			builder.append(Util.escapeHTMLString(path));
+			builder.append(suffix);
+		}
+		return builder.toString().trim();
 	}
 
-	private void substituteJSLinks() {
-		if (js_paths != null) {
-			StringBuilder builder = new StringBuilder();
-			for (String path : js_paths) {
-				builder.append("    <script src=\"");
-				builder.append(Util.escapeHTMLString(path));
-				builder.append("\"></script>\n");
+	private String[] getHeader() {
+		StringBuilder key = new StringBuilder();
+		key.append(declare).append('\0').append(encoding).append('\0');
+		key.append(css_paths).append('\0').append(js_paths);
+
+		String[] header = header_cache.get(key.toString());
+		if (header == null) {
+			String html = html_open;
+			if (declare != null) {
+				html = html.replace("<!DOCTYPE html>", declare);
 			}
-			html_open = html_open.replace("__JS_URL__",
-					builder.toString().trim());
-		} else {
-			html_open = html_open.replace("__JS_URL__", "");
+			html = html.replace("__ENCODING__", encoding);
+			html = html.replace("__CSS_URL__", linksString(css_paths,
+					"<link rel=\"stylesheet\" type=\"text/css\" href=\"",
+					"\"/>\n"));
+			html = html.replace("__JS_URL__", linksString(js_paths,
+					"    <script src=\"", "\"></script>\n"));
+
+			int index = html.indexOf("__TITLE__");
+			header = new String[] {
+					html.substring(0, index),
+					html.substring(index + "__TITLE__".length())
+			};
+			if (header_cache.size() >= MAX_HEADERS) {
+				header_cache.clear();
+			}
+			header_cache.put(key.toString(), header);
 		}
+		return header;
 	}
 
 	@Override
@@ -136,23 +182,34 @@ public class HTMLDoc extends TextDoc
 		if (out_stream == null)
 			return false;
 
-		substituteDeclare();
-		substituteTitle();
-		html_open = html_open.replace("__ENCODING__", encoding);
-		substituteCSSLinks();
-		substituteJSLinks();
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(out_stream,
+					Charset.forName(encoding)), 16 * 1024);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unsupported encoding.");
+			return false;
+		}
+		String[] header = getHeader();
 
 		is_open = true;
-		return writeStream(html_open);
+		return writeStream(header[0])
+				&& writeStream(Util.escapeHTMLString(getTitle()))
+				&& writeStream(header[1]);
 	}
 
 	@Override
 	public void close() {
-		if (is_open && out_stream != null) {
+		if (is_open && writer != null) {
 			if (extra != null) {
 				writeStream(extra);
 			}
 			writeStream(html_close);
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				System.err.println("Write to html stream failed.");
+			}
+			writer = null;
 		}
 	}
 
@@ -208,24 +265,6 @@ public class HTMLDoc extends TextDoc
 		return html_attrs;
 	}
 
-	private String htmlCharEscape(String contents) {
-		StringBuilder builder = new StringBuilder();
-		for (int i = 0; i < contents.length(); i++) {
-			char ch = contents.charAt(i);
-			if (ch == '\n') {
-				builder.append("<br/>");
-			} else {
-				String escape = Util.escapeHTMLChars(ch);
-				if (escape != null) {
-					builder.append(escape);
-				} else {
-					builder.append(ch);
-				}
-			}
-		}
-		return builder.toString();
-	}
-
 	private void writeValue(TextChunk chunk) {
 		Map<String, String> attrs = chunk.getAttrs();
 		String id = attrs.get("id");
@@ -289,10 +328,14 @@ public class HTMLDoc extends TextDoc
 			}
 			Map<String, String> html_attrs = getHtmlAttrs(chunk, i == 0);
 			for (String key : html_attrs.keySet()) {
-				writeStream(" " + key + "=\"" + html_attrs.get(key) + "\"");
+				writeStream(" ");
+				writeStream(key);
+				writeStream("=\"");
+				writeStream(html_attrs.get(key));
+				writeStream("\"");
 			}
 			writeStream(">");
-			writeStream(htmlCharEscape(chunk.getContents()));
+			writeText(chunk.getContents());
 			if (i > 0) {
 				writeStream("</span>");
 			}
@@ -325,7 +368,23 @@ public class HTMLDoc extends TextDoc
 		if (!isOpen() || table == null) {
 			return;
 		}
-		Map<String, String> attrs = table.getAttrs();
+		beginTable(table.getAttrs());
+		for (TextChunk text_chunk : table.getCells()) {
+			addTableCell(text_chunk);
+		}
+		endTable();
+	}
+
+	/**
+	 * 开始输出表格，单元格边添加边输出
+	 */
+	@Override
+	public void beginTable(Map<String, String> attrs) throws IOException {
+		table_columns = null;
+		table_cell_index = 0;
+		if (!isOpen()) {
+			return;
+		}
 		int[] columns = null;
 
 		String value = attrs.get("columns");
@@ -348,22 +407,38 @@ public class HTMLDoc extends TextDoc
 		if (columns == null) {
 			return;
 		}
-
+		table_columns = columns;
 		writeStream("    <table border=\"2\" width=\"100%\">\n");
-		for (int i = 0; i < table.getCells().size(); i++) {
-			int colno = i % columns.length;
-			if (colno == 0) {
-				if (i > 0) {
-					writeStream("      </tr>\n");
-				}
-				writeStream("      <tr>\n");
-			}
-			if (columns[colno] > 0) {
-				TextChunk text_chunk = table.getCells().get(i);
-				writeStream("        <td width=\"" + columns[colno] + "%\">" +
-						text_chunk.getContents() + "</td>\n");
+	}
+
+	@Override
+	public void addTableCell(TextChunk text_chunk) throws IOException {
+		if (table_columns == null) {
+			return;
+		}
+		int colno = table_cell_index % table_columns.length;
+		if (colno == 0) {
+			if (table_cell_index > 0) {
+				writeStream("      </tr>\n");
 			}
+			writeStream("      <tr>\n");
+		}
+		if (table_columns[colno] > 0) {
+			writeStream("        <td width=\"");
+			writeStream(Integer.toString(table_columns[colno]));
+			writeStream("%\">");
+			writeStream(text_chunk.getContents());
+			writeStream("</td>\n");
+		}
+		table_cell_index++;
+	}
+
+	@Override
+	public void endTable() throws IOException {
+		if (table_columns == null) {
+			return;
 		}
+		table_columns = null;
 		writeStream("      </tr>\n");
 		writeStream("    </table>\n");
 	}
@@ -0,0 +1,28 @@
+package com.example.mytextpdf.utils;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+
+/**
+ * img 元素
+ */
+class ImageNode extends TemplateNode
+{
+	final Attributes attrs;
+
+	ImageNode(Attributes attrs) {
+		this.attrs = new AttributesImpl(attrs);
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		context.text_doc.addImage(attrs);
+	}
+
+	@Override
+	boolean isStatic() {
+		return true;
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * 按模板需要解析的 JSON 数据源
+ *
+ * 由 CompiledTemplate.parseData() 创建，只保留模板用到的数据，
+ * 其它部分在解析时直接跳过。
+ */
+public class JSONDataSource extends DataSource
+{
+	private final DataSource source;
+	private final long total_bytes;
+	private final long skipped_bytes;
+	private final long bound_bytes;
+
+	JSONDataSource(InputStream json_stream, PathTrie trie)
+			throws IOException {
+		SelectiveJSONParser parser = new SelectiveJSONParser(json_stream);
+		Map<?, ?> json_object;
+		try {
+			json_object = parser.parse(trie);
+		} catch (IOException ex) {
+			throw new IOException("Failed to parse JSON stream", ex);
+		}
+		this.source = DataSource.fromMap(json_object);
+		this.total_bytes = parser.getTotalBytes();
+		this.skipped_bytes = parser.skipped_bytes;
+		this.bound_bytes = parser.bound_bytes;
+	}
+
+	@Override
+	public String getTitle() {
+		return source.getTitle();
+	}
+
+	@Override
+	public Object getData() {
+		return source.getData();
+	}
+
+	/**
+	 * JSON 数据的总字节数
+	 */
+	public long getTotalBytes() {
+		return total_bytes;
+	}
+
+	/**
+	 * 模板用不到、没有解析就跳过的字节数
+	 */
+	public long getSkippedBytes() {
+		return skipped_bytes;
+	}
+
+	/**
+	 * 解析为数据对象的字节数
+	 */
+	public long getBoundBytes() {
+		return bound_bytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("total=%d, skipped=%d, bound=%d",
+				total_bytes, skipped_bytes, bound_bytes);
+	}
+
+}
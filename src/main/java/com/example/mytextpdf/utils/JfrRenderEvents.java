@@ -0,0 +1,336 @@
+package com.example.mytextpdf.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * RenderEvents 的 JFR 实现，只在运行环境支持 JFR 时由 RenderEvents 创建
+ *
+ * 编译时需要 jdk.jfr，所以构建要求 JDK 11 及以上(见 pom.xml)。
+ */
+final class JfrRenderEvents extends RenderEvents
+{
+	private final EventType[] types = {
+			EventType.getEventType(TemplateParseEvent.class),
+			EventType.getEventType(DataBindEvent.class),
+			EventType.getEventType(BlockWriteEvent.class),
+			EventType.getEventType(TableWriteEvent.class),
+			EventType.getEventType(ImageLoadEvent.class),
+			EventType.getEventType(FontLoadEvent.class),
+			EventType.getEventType(DocumentRenderEvent.class),
+			EventType.getEventType(DocumentCloseEvent.class),
+			EventType.getEventType(PDFProcessEvent.class),
+	};
+
+	@Override
+	boolean isEnabled(int kind) {
+		return types[kind].isEnabled();
+	}
+
+	@Override
+	Object begin(int kind) {
+		if (!types[kind].isEnabled()) {
+			return null;
+		}
+		Event event;
+		switch (kind) {
+		case TEMPLATE_PARSE:
+			event = new TemplateParseEvent();
+			break;
+		case DATA_BIND:
+			event = new DataBindEvent();
+			break;
+		case BLOCK_WRITE:
+			event = new BlockWriteEvent();
+			break;
+		case TABLE_WRITE:
+			event = new TableWriteEvent();
+			break;
+		case IMAGE_LOAD:
+			event = new ImageLoadEvent();
+			break;
+		case FONT_LOAD:
+			event = new FontLoadEvent();
+			break;
+		case DOCUMENT_RENDER:
+			event = new DocumentRenderEvent();
+			break;
+		case DOCUMENT_CLOSE:
+			event = new DocumentCloseEvent();
+			break;
+		default:
+			event = new PDFProcessEvent();
+			break;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	void commitTemplateParse(Object event, String template, long bytes,
+			int nodes) {
+		if (event == null) {
+			return;
+		}
+		TemplateParseEvent e = (TemplateParseEvent) event;
+		e.template = template;
+		e.bytes = bytes;
+		e.nodes = nodes;
+		e.commit();
+	}
+
+	@Override
+	void commitDataBind(Object event, String template, long total_bytes,
+			long skipped_bytes, long bound_bytes) {
+		if (event == null) {
+			return;
+		}
+		DataBindEvent e = (DataBindEvent) event;
+		e.template = template;
+		e.totalBytes = total_bytes;
+		e.skippedBytes = skipped_bytes;
+		e.boundBytes = bound_bytes;
+		e.commit();
+	}
+
+	@Override
+	void commitBlockWrite(Object event, String template, String block,
+			int page, int chunks) {
+		if (event == null) {
+			return;
+		}
+		BlockWriteEvent e = (BlockWriteEvent) event;
+		e.template = template;
+		e.block = block;
+		e.page = page;
+		e.chunks = chunks;
+		e.commit();
+	}
+
+	@Override
+	void commitTableWrite(Object event, String template, int start_page,
+			int end_page, int cells) {
+		if (event == null) {
+			return;
+		}
+		TableWriteEvent e = (TableWriteEvent) event;
+		e.template = template;
+		e.startPage = start_page;
+		e.endPage = end_page;
+		e.cells = cells;
+		e.commit();
+	}
+
+	@Override
+	void commitImageLoad(Object event, String template, String source,
+			int page, long bytes) {
+		if (event == null) {
+			return;
+		}
+		ImageLoadEvent e = (ImageLoadEvent) event;
+		e.template = template;
+		e.source = source;
+		e.page = page;
+		e.bytes = bytes;
+		e.commit();
+	}
+
+	@Override
+	void commitFontLoad(Object event, String font, long bytes) {
+		if (event == null) {
+			return;
+		}
+		FontLoadEvent e = (FontLoadEvent) event;
+		e.font = font;
+		e.bytes = bytes;
+		e.commit();
+	}
+
+	@Override
+	void commitDocument(Object event, String template, String type,
+			int pages, long bytes) {
+		if (event instanceof DocumentRenderEvent) {
+			DocumentRenderEvent e = (DocumentRenderEvent) event;
+			e.template = template;
+			e.type = type;
+			e.pages = pages;
+			e.bytes = bytes;
+			e.commit();
+		} else if (event instanceof DocumentCloseEvent) {
+			DocumentCloseEvent e = (DocumentCloseEvent) event;
+			e.template = template;
+			e.type = type;
+			e.pages = pages;
+			e.bytes = bytes;
+			e.commit();
+		}
+	}
+
+	@Override
+	void commitProcess(Object event, String operation, int pages,
+			long bytes) {
+		if (event == null) {
+			return;
+		}
+		PDFProcessEvent e = (PDFProcessEvent) event;
+		e.operation = operation;
+		e.pages = pages;
+		e.bytes = bytes;
+		e.commit();
+	}
+
+
+	@Name("com.example.mytextpdf.TemplateParse")
+	@Label("Template Parse")
+	@Category("TextPdf")
+	@Description("Compile a XML template")
+	static class TemplateParseEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		@Label("Top Level Nodes")
+		int nodes;
+	}
+
+	@Name("com.example.mytextpdf.DataBind")
+	@Label("Data Bind")
+	@Category("TextPdf")
+	@Description("Parse the JSON data used by a template")
+	static class DataBindEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Total Bytes")
+		@DataAmount
+		long totalBytes;
+		@Label("Skipped Bytes")
+		@DataAmount
+		long skippedBytes;
+		@Label("Bound Bytes")
+		@DataAmount
+		long boundBytes;
+	}
+
+	@Name("com.example.mytextpdf.BlockWrite")
+	@Label("Block Write")
+	@Category("TextPdf")
+	@Description("Lay out one block (title, chapter, section, para)")
+	@StackTrace(false)
+	static class BlockWriteEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Block")
+		String block;
+		@Label("Page")
+		int page;
+		@Label("Chunks")
+		int chunks;
+	}
+
+	@Name("com.example.mytextpdf.TableWrite")
+	@Label("Table Write")
+	@Category("TextPdf")
+	@Description("Lay out one table")
+	@StackTrace(false)
+	static class TableWriteEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Start Page")
+		int startPage;
+		@Label("End Page")
+		int endPage;
+		@Label("Cells")
+		int cells;
+	}
+
+	@Name("com.example.mytextpdf.ImageLoad")
+	@Label("Image Load")
+	@Category("TextPdf")
+	@Description("Load an image referenced by a template")
+	static class ImageLoadEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Source")
+		String source;
+		@Label("Page")
+		int page;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.example.mytextpdf.FontLoad")
+	@Label("Font Load")
+	@Category("TextPdf")
+	@Description("Read and parse a font file")
+	static class FontLoadEvent extends Event
+	{
+		@Label("Font")
+		String font;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.example.mytextpdf.DocumentRender")
+	@Label("Document Render")
+	@Category("TextPdf")
+	@Description("Render one document, from open to close")
+	static class DocumentRenderEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Type")
+		String type;
+		@Label("Pages")
+		int pages;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.example.mytextpdf.DocumentClose")
+	@Label("Document Close")
+	@Category("TextPdf")
+	@Description("Close a document: compress and write the remaining objects")
+	static class DocumentCloseEvent extends Event
+	{
+		@Label("Template")
+		String template;
+		@Label("Type")
+		String type;
+		@Label("Pages")
+		int pages;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.example.mytextpdf.PDFProcess")
+	@Label("PDF Process")
+	@Category("TextPdf")
+	@Description("One PDFProcess operation")
+	static class PDFProcessEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		@Label("Pages")
+		int pages;
+		@Label("Bytes Written")
+		@DataAmount
+		long bytes;
+	}
+
+}
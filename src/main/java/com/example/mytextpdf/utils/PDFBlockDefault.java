@@ -0,0 +1,50 @@
+/* TextPDF - generate PDF dynamically
+ *
+ * Copyright (c) 2015 Lucky Byte, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.example.mytextpdf.utils;
+
+/**
+ * 一个类用于保存块默认属性
+ */
+class PDFBlockDefault {
+    int block_type;
+    int font_family;
+    int font_size;
+    int font_style;
+    int alignment;
+    float indent;
+    float line_space_before;
+    float line_space_after;
+
+    public PDFBlockDefault(int block_type, int family,
+                           int size, int style, int alignment, float indent,
+                           float line_space_before, float line_space_after) {
+        this.block_type = block_type;
+        this.font_family = family;
+        this.font_size = size;
+        this.font_style = style;
+        this.alignment = alignment;
+        this.indent = indent;
+        this.line_space_before = line_space_before;
+        this.line_space_after = line_space_after;
+    }
+}
@@ -28,47 +28,27 @@ import com.itextpdf.text.pdf.draw.LineSeparator;
 import org.springframework.util.ResourceUtils;
 import org.xml.sax.Attributes;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 
-/**
- * 一个类用于保存块默认属性
- */
-class PDFBlockDefault {
-    int block_type;
-    int font_family;
-    int font_size;
-    int font_style;
-    int alignment;
-    float indent;
-    float line_space_before;
-    float line_space_after;
-
-    public PDFBlockDefault(int block_type, int family,
-                           int size, int style, int alignment, float indent,
-                           float line_space_before, float line_space_after) {
-        this.block_type = block_type;
-        this.font_family = family;
-        this.font_size = size;
-        this.font_style = style;
-        this.alignment = alignment;
-        this.indent = indent;
-        this.line_space_before = line_space_before;
-        this.line_space_after = line_space_after;
-    }
-}
-
 /**
  * PDF 操作类
  * <p>
  * 这个类封装 PDF 文档相关的操作，通过 iText 实现。
  * 如果需要水印、印章等特殊效果，请参考 PDFProcess 类。
+ * <p>
+ * 设置了 setDeflatePool() 时，生成过程中整个文档以未压缩的形式保存在
+ * 内存中(deflate_buffer)，关闭时才压缩并写到输出流，内存占用与未压缩的
+ * 文档大小相当。
  */
 public class PDFDoc extends TextDoc {
     public final static int BLOCK_TITLE = 1;
@@ -94,6 +74,27 @@ public class PDFDoc extends TextDoc {
     private Document document;
     private PdfWriter writer;
     private Map<String, Image> images;
+    private PDFDocPageEvent page_event;
+
+    private boolean encrypted = false;
+    private PDFOutputProfile output_profile = PDFOutputProfile.BALANCED;
+    // 关闭时并行压缩流使用的线程池，null 表示生成时顺序压缩
+    private ForkJoinPool deflate_pool = null;
+    // 并行压缩时先不压缩写到这里
+    private ByteArrayOutputStream deflate_buffer = null;
+    private String user_passwd = null;
+    private String owner_passwd = null;
+    private int permissions;
+
+    // 表格每积累这么多行就输出一次，长表格不会全部留在内存中
+    static final int TABLE_FLUSH_ROWS = 50;
+
+    private PdfPTable stream_table = null;
+    private PDFBlockDefault stream_table_default = null;
+    // 正在输出的表格的 JFR 事件、开始页和单元格数
+    private Object stream_table_event = null;
+    private int stream_table_page;
+    private int stream_table_cells;
 
     private SplitCharacter split_character = new SplitCharacter() {
         @Override
@@ -106,10 +107,18 @@ public class PDFDoc extends TextDoc {
     public PDFDoc(OutputStream pdf_stream) {
         super(pdf_stream);
 
-        block_defaults = new ArrayList<PDFBlockDefault>();
+        block_defaults = createBlockDefaults();
         images = new HashMap<String, Image>();
+        page_event = new PDFDocPageEvent();
+    }
 
-        // 默认的块属性，应用程序可以通过 setBlockDefault() 来修改这些属性
+    /**
+     * 创建默认的块属性，应用程序可以通过 setBlockDefault() 来修改这些属性
+     *
+     * @return
+     */
+    static List<PDFBlockDefault> createBlockDefaults() {
+        List<PDFBlockDefault> block_defaults = new ArrayList<PDFBlockDefault>();
         block_defaults.add(new PDFBlockDefault(BLOCK_TITLE,
                 FONT_FAMILY_HEI, 18, FONT_STYLE_BOLD,
                 Element.ALIGN_CENTER, 0.0f, 0.0f, 16.0f));
@@ -122,6 +131,7 @@ public class PDFDoc extends TextDoc {
         block_defaults.add(new PDFBlockDefault(BLOCK_PARA,
                 FONT_FAMILY_SONG, 12, 0,
                 Element.ALIGN_LEFT, 22.0f, 6.0f, 0.0f));
+        return block_defaults;
     }
 
     private void addMetaInfo() {
@@ -144,9 +154,30 @@ public class PDFDoc extends TextDoc {
             document = new Document();
             document.setMargins(page_margin_left, page_margin_right,
                     page_margin_top, page_margin_bottom);
-            writer = PdfWriter.getInstance(document, out_stream);
-            // writer.setFullCompression();	// 需求 PDF 1.5
-            writer.setCompressionLevel(9);
+            deflate_buffer = null;
+            if (deflate_pool != null && !encrypted
+                    && !output_profile.isFullCompression()) {
+                deflate_buffer = new ByteArrayOutputStream(64 * 1024);
+                writer = PdfWriter.getInstance(document, deflate_buffer);
+                writer.setCompressionLevel(PdfStream.NO_COMPRESSION);
+            } else {
+                writer = PdfWriter.getInstance(document, out_stream);
+                writer.setCompressionLevel(
+                        output_profile.getCompressionLevel());
+            }
+            writer.setPdfVersion(output_profile.getPdfVersion());
+            if (output_profile.isFullCompression()) {
+                writer.setFullCompression();
+            }
+            if (encrypted) {
+                writer.setEncryption(DocWriter.getISOBytes(user_passwd),
+                        DocWriter.getISOBytes(owner_passwd), permissions,
+                        PdfWriter.ENCRYPTION_AES_128 |
+                                PdfWriter.DO_NOT_ENCRYPT_METADATA);
+            }
+            if (!page_event.isEmpty()) {
+                writer.setPageEvent(page_event);
+            }
             addMetaInfo();
             document.open();
             return true;
@@ -162,6 +193,23 @@ public class PDFDoc extends TextDoc {
     @Override
     public void close() {
         document.close();
+        if (deflate_buffer != null) {
+            byte[] pdf = deflate_buffer.toByteArray();
+            deflate_buffer = null;
+            try {
+                try {
+                    ParallelDeflate.rewrite(pdf,
+                            output_profile.getCompressionLevel(),
+                            deflate_pool, out_stream);
+                } finally {
+                    out_stream.close();
+                }
+            } catch (IOException e) {
+                // close() 不能抛出受检异常，输出不完整时不能当作成功
+                throw new UncheckedIOException(
+                        "Failed to write deflated PDF", e);
+            }
+        }
     }
 
     /**
@@ -194,6 +242,96 @@ public class PDFDoc extends TextDoc {
         }
     }
 
+    /**
+     * 生成时在每一页添加文字水印，参数与 PDFProcess.addTextMarker() 相同，
+     * 需要在 open() 之前调用
+     *
+     * @param text      水印文字
+     * @param opacity   透明度
+     * @param angle     角度
+     * @param font_size 字体大小
+     * @param style     PDFProcess.MARKER_STYLE_CENTER 或 MARKER_STYLE_FULL
+     */
+    public void addTextMarker(String text, float opacity,
+                              int angle, int font_size, int style) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        page_event.marker_text = text;
+        page_event.marker_opacity = opacity;
+        page_event.marker_angle = angle;
+        page_event.marker_font_size = font_size;
+        page_event.marker_style = style;
+    }
+
+    /**
+     * 生成时在每一页底部添加 "第 X 页 共 Y 页"，需要在 open() 之前调用
+     */
+    public void addPageNum() {
+        page_event.show_page_num = true;
+    }
+
+    /**
+     * 生成时在每一页添加页眉，需要在 open() 之前调用
+     *
+     * @param text 页眉文字
+     */
+    public void addHeader(String text) {
+        page_event.header_text = text;
+    }
+
+    /**
+     * 生成时在第一页右上角添加二维码，需要在 open() 之前调用
+     *
+     * @param contents 二维码内容
+     */
+    public void addQRCode(String contents) {
+        page_event.qrcode_contents = contents;
+    }
+
+    /**
+     * 生成加密的 PDF 文档，参数与 PDFProcess.encrypt() 相同，
+     * 需要在 open() 之前调用
+     *
+     * @param user_passwd  用户密码
+     * @param owner_passwd 所有者密码，null 表示使用默认密码
+     * @param permissions  PDFProcess.ALLOW_XXX 的组合
+     */
+    public void encrypt(String user_passwd, String owner_passwd,
+                        int permissions) {
+        if (owner_passwd == null) {
+            owner_passwd = PDFProcess.DEFAULT_OWNER_PASSWD;
+        }
+        this.encrypted = true;
+        this.user_passwd = user_passwd;
+        this.owner_passwd = owner_passwd;
+        this.permissions = permissions;
+    }
+
+    /**
+     * 设置输出方式，默认为 PDFOutputProfile.BALANCED，
+     * 需要在 open() 之前调用
+     *
+     * @param output_profile 输出方式
+     */
+    public void setOutputProfile(PDFOutputProfile output_profile) {
+        this.output_profile = output_profile;
+    }
+
+    /**
+     * 关闭文档时在 pool 中并行压缩页面内容、图片和字体，需要在 open() 之前调用
+     * <p>
+     * 生成时先不压缩，未压缩的整个文档保存在内存中，关闭时按输出方式的级别
+     * 并行压缩各个流，输出与顺序压缩的相同。加密的文档和使用对象流的
+     * PDFOutputProfile.ARCHIVE 仍然顺序压缩。压缩或写出失败时 close()
+     * 抛出 UncheckedIOException。
+     *
+     * @param pool 线程池，null 表示生成时顺序压缩
+     */
+    public void setDeflatePool(ForkJoinPool pool) {
+        this.deflate_pool = pool;
+    }
+
     /**
      * 设置块默认属性
      * 这个函数一次性设置所有的块默认属性，如果需要单独设置某一个属性，
@@ -333,6 +471,7 @@ public class PDFDoc extends TextDoc {
     /**
      * 根据 TextChunk 中字体相关的属性来设置 Chunk 的字体，字体包括：
      * 家族(黑体或宋体)、大小、修饰(粗体、斜体、下划线等等)。
+     * 属性在 TextStyle 中已经解析好，相同的字体共享一个 Font 对象。
      *
      * @param text_chunk    TextChunk 对象，保存了字体的属性
      * @param chunk         PDF Chunk 对象
@@ -343,62 +482,7 @@ public class PDFDoc extends TextDoc {
     private void setChunkFont(TextChunk text_chunk, Chunk chunk,
                               PDFBlockDefault block_default)
             throws DocumentException, IOException {
-        Map<String, String> attrs = text_chunk.getAttrs();
-
-        int font_family = block_default.font_family;
-        int font_size = block_default.font_size;
-        int font_style = block_default.font_style;
-        BaseFont base_font = null;
-
-        String value = attrs.get("font-family");
-        if (value != null) {
-            if (value.equalsIgnoreCase("heiti") ||
-                    value.equalsIgnoreCase("hei")) {
-                font_family = FONT_FAMILY_HEI;
-            } else if (value.equalsIgnoreCase("songti") ||
-                    value.equalsIgnoreCase("song")) {
-                font_family = FONT_FAMILY_SONG;
-            } else {
-                System.err.println("Font family '" + value + "' unknown!");
-            }
-        }
-
-        value = attrs.get("font-size");
-        if (value != null) {
-            try {
-                font_size = Integer.parseInt(value);
-            } catch (Exception ex) {
-                System.err.println("Font size '" + value + "' invalid.");
-            }
-        }
-
-        value = attrs.get("font-style");
-        if (value != null) {
-            font_style = 0;
-            String[] styles = value.split(",");
-            for (int i = 0; i < styles.length; i++) {
-                String label = styles[i].trim();
-                if (label.equalsIgnoreCase("bold")) {
-                    font_style |= Font.BOLD;
-                } else if (label.equalsIgnoreCase("italic")) {
-                    font_style |= Font.ITALIC;
-                } else if (label.equalsIgnoreCase("underline")) {
-                    font_style |= Font.UNDERLINE;
-                }
-            }
-        }
-
-        switch (font_family) {
-            case FONT_FAMILY_HEI:
-                base_font = BaseFont.createFont(PDFContant.resourcePath+"font/SIMHEI.TTF",
-                        BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                break;
-            case FONT_FAMILY_SONG:
-                base_font = BaseFont.createFont(PDFContant.resourcePath+"font/SIMSUN.TTC,0",
-                        BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                break;
-        }
-        chunk.setFont(new Font(base_font, font_size, font_style));
+        chunk.setFont(text_chunk.getStyle().getFont(block_default));
     }
 
     /**
@@ -414,32 +498,20 @@ public class PDFDoc extends TextDoc {
                               PDFBlockDefault block_default)
             throws DocumentException, IOException {
         Chunk chunk = new Chunk();
-        Map<String, String> attrs = text_chunk.getAttrs();
+        TextStyle style = text_chunk.getStyle();
 
-        String value = attrs.get("super");
-        if (value != null && value.equalsIgnoreCase("true")) {
-            chunk.setTextRise(6.0f);
-            if (!attrs.containsKey("font-size")) {
-                attrs.put("font-size", "8");
-            }
-        }
-        value = attrs.get("sub");
-        if (value != null && value.equalsIgnoreCase("true")) {
-            chunk.setTextRise(-3.0f);
-            if (!attrs.containsKey("font-size")) {
-                attrs.put("font-size", "8");
-            }
+        if (style.text_rise != 0) {
+            chunk.setTextRise(style.text_rise);
         }
 
         String contents = text_chunk.getContents();
 
-        value = text_chunk.getAttrs().get("minlen");
-        if (value != null && value.length() > 0) {
+        if (style.has_minlen) {
             if (contents.length() == 0) {
                 chunk.setUnderline(1.0f, -4.0f);
             }
-            try {
-                int minlen = Integer.parseInt(value);
+            if (style.minlen != TextStyle.UNSET) {
+                int minlen = style.minlen;
                 int currlen = 0;
                 for (int i = 0; i < contents.length(); i++) {
                     char ch = contents.charAt(i);
@@ -456,9 +528,6 @@ public class PDFDoc extends TextDoc {
                     }
                     contents = builder.toString();
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                System.err.println("minlen need a integer value.");
             }
         }
         chunk.append(contents);
@@ -470,54 +539,23 @@ public class PDFDoc extends TextDoc {
         // 用第一个节点来设置块的段落属性
         TextChunk text_chunk = chunk_list.get(0);
         if (text_chunk != null) {
-            Map<String, String> attrs = text_chunk.getAttrs();
+            TextStyle style = text_chunk.getStyle();
 
             // 设置段落对齐方式
-            String value = attrs.get("align");
-            if (value != null) {
-                if (value.equalsIgnoreCase("left")) {
-                    para.setAlignment(Element.ALIGN_LEFT);
-                } else if (value.equalsIgnoreCase("center")) {
-                    para.setAlignment(Element.ALIGN_CENTER);
-                } else if (value.equalsIgnoreCase("right")) {
-                    para.setAlignment(Element.ALIGN_RIGHT);
-                } else {
-                    System.err.println("Block alignment type '"
-                            + value + "' unknown.");
-                }
+            if (style.alignment != TextStyle.UNSET) {
+                para.setAlignment(style.alignment);
             }
             // 设置段落缩进
-            value = attrs.get("indent");
-            if (value != null) {
-                try {
-                    float indent = Float.parseFloat(value);
-                    para.setFirstLineIndent(indent);
-                } catch (Exception ex) {
-                    System.err.println(
-                            "Indent attribute must has a float value");
-                }
+            if (!Float.isNaN(style.indent)) {
+                para.setFirstLineIndent(style.indent);
             }
             // 设置段落前空间
-            value = attrs.get("space-before");
-            if (value != null) {
-                try {
-                    float space = Float.parseFloat(value);
-                    para.setSpacingBefore(space);
-                } catch (Exception ex) {
-                    System.err.println(
-                            "space-before attribute must has a float value");
-                }
+            if (!Float.isNaN(style.space_before)) {
+                para.setSpacingBefore(style.space_before);
             }
             // 设置段落后空间
-            value = attrs.get("space-after");
-            if (value != null) {
-                try {
-                    float space = Float.parseFloat(value);
-                    para.setSpacingAfter(space);
-                } catch (Exception ex) {
-                    System.err.println(
-                            "space-after attribute must has a float value");
-                }
+            if (!Float.isNaN(style.space_after)) {
+                para.setSpacingAfter(style.space_after);
             }
         }
     }
@@ -584,16 +622,114 @@ public class PDFDoc extends TextDoc {
 
         for (PDFBlockDefault block_default : block_defaults) {
             if (block_default.block_type == block_type) {
+                Object event = RenderEvents.INSTANCE.begin(
+                        RenderEvents.BLOCK_WRITE);
                 try {
                     addParagraph(block_type, chunk_list, block_default);
                 } catch (DocumentException e) {
                     throw new IOException(e);
                 }
+                if (event != null) {
+                    RenderEvents.INSTANCE.commitBlockWrite(event,
+                            template_name, block_name,
+                            writer.getPageNumber(), chunk_list.size());
+                }
                 break;
             }
         }
     }
 
+    /**
+     * 文档是否还没有任何内容
+     */
+    boolean isEmpty() {
+        return isOpen() && writer.getPageNumber() == 1 && writer.isPageEmpty();
+    }
+
+    /**
+     * 已经写出的页数，在 close() 之后调用
+     */
+    int getPageCount() {
+        return writer == null ? 0 : writer.getCurrentPageNumber() - 1;
+    }
+
+    /**
+     * 影响排版结果的参数：页面大小、边距、块默认属性和输出方式，
+     * 这些参数相同时，同样的静态内容排版结果相同
+     */
+    String getLayoutSignature() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(page_size.getWidth())
+                .append('x').append(page_size.getHeight())
+                .append('r').append(page_size.getRotation())
+                .append(';').append(page_margin_left)
+                .append(',').append(page_margin_right)
+                .append(',').append(page_margin_top)
+                .append(',').append(page_margin_bottom)
+                .append(';').append(output_profile.name());
+        for (PDFBlockDefault block : block_defaults) {
+            builder.append(';').append(block.block_type)
+                    .append(',').append(block.font_family)
+                    .append(',').append(block.font_size)
+                    .append(',').append(block.font_style)
+                    .append(',').append(block.alignment)
+                    .append(',').append(block.indent)
+                    .append(',').append(block.line_space_before)
+                    .append(',').append(block.line_space_after);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 创建一个排版参数相同的文档，用于单独排版一部分内容，
+     * 不包含水印、页码等页面装饰，也不加密
+     *
+     * @param pdf_stream 输出流
+     * @return
+     */
+    PDFDoc createLayoutCopy(OutputStream pdf_stream) {
+        PDFDoc copy = new PDFDoc(pdf_stream);
+        copy.template_name = template_name;
+        copy.output_profile = output_profile;
+        copy.setPageSize(page_size);
+        copy.setPageMargin(page_margin_left, page_margin_right,
+                page_margin_top, page_margin_bottom);
+        for (PDFBlockDefault block : block_defaults) {
+            copy.setBlockDefault(block.block_type, block.font_family,
+                    block.font_size, block.font_style, block.alignment,
+                    block.indent, block.line_space_before,
+                    block.line_space_after);
+        }
+        return copy;
+    }
+
+    /**
+     * 将已经排版好的 PDF 页面逐页放入文档，从当前页开始，
+     * 每页作为一个 Form XObject 引用，不再重新排版
+     *
+     * @param pdf 排版好的 PDF 文档
+     * @throws IOException
+     */
+    void addPages(byte[] pdf) throws IOException {
+        if (!isOpen()) {
+            System.err.println("Document unopen yet, please open it first.");
+            return;
+        }
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            PdfContentByte content = writer.getDirectContent();
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                if (i > 1) {
+                    document.newPage();
+                }
+                content.addTemplate(writer.getImportedPage(reader, i), 0, 0);
+            }
+            writer.freeReader(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
     /**
      * 换页
      */
@@ -650,9 +786,21 @@ public class PDFDoc extends TextDoc {
                 return;
             }
             Image img = images.get(src);
+            RenderMetrics.get().recordCache(RenderMetrics.CACHE_IMAGE,
+                    img != null);
             if (img == null) {
+                Object event = RenderEvents.INSTANCE.begin(
+                        RenderEvents.IMAGE_LOAD);
                 img = Image.getInstance(src);
+                // 需要压缩的图片(PNG、GIF 等)按输出方式的级别压缩，JPEG 不变
+                img.setCompressionLevel(writer.getCompressionLevel());
                 images.put(src, img);
+                if (event != null) {
+                    byte[] raw = img.getRawData();
+                    RenderEvents.INSTANCE.commitImageLoad(event,
+                            template_name, src, writer.getPageNumber(),
+                            raw == null ? 0 : raw.length);
+                }
             }
             if (img != null) {
                 document.add(img);
@@ -698,6 +846,14 @@ public class PDFDoc extends TextDoc {
         table.setWidthPercentage(width);
         table.setLockedWidth(false);
 
+        value = attrs.get("header-rows");
+        if (value != null) {
+            try {
+                table.setHeaderRows(Integer.parseInt(value));
+            } catch (Exception ex) {
+                System.err.println("header-rows must has a integer value");
+            }
+        }
         return table;
     }
 
@@ -712,24 +868,12 @@ public class PDFDoc extends TextDoc {
         cell.setVerticalAlignment(Element.ALIGN_CENTER);
         cell.setPadding(5);
 
-        Map<String, String> attrs = text_chunk.getAttrs();
-        String value = attrs.get("colspan");
-        if (value != null) {
-            try {
-                cell.setColspan(Integer.parseInt(value));
-            } catch (Exception ex) {
-                System.err.println("colspan must has a integer value");
-            }
+        TextStyle style = text_chunk.getStyle();
+        if (style.colspan != TextStyle.UNSET) {
+            cell.setColspan(style.colspan);
         }
-        value = attrs.get("align");
-        if (value != null) {
-            if (value.equalsIgnoreCase("left")) {
-                cell.setHorizontalAlignment(Element.ALIGN_LEFT);
-            } else if (value.equalsIgnoreCase("center")) {
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            } else if (value.equalsIgnoreCase("right")) {
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            }
+        if (style.alignment != TextStyle.UNSET) {
+            cell.setHorizontalAlignment(style.alignment);
         }
         return cell;
     }
@@ -739,37 +883,82 @@ public class PDFDoc extends TextDoc {
         if (!isOpen() || table == null) {
             return;
         }
-        PDFBlockDefault block_default = null;
+        beginTable(table.getAttrs());
+        for (TextChunk text_chunk : table.getCells()) {
+            addTableCell(text_chunk);
+        }
+        endTable();
+    }
+
+    /**
+     * 开始输出表格
+     * <p>
+     * 表格使用 iText 的未完成表格方式输出，每积累 TABLE_FLUSH_ROWS 行
+     * 就写入文档并释放，占用的内存与表格行数无关。
+     * 表格属性 header-rows 指定表头行数，表头在每页重复。
+     */
+    @Override
+    public void beginTable(Map<String, String> attrs) throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        stream_table_default = null;
         for (PDFBlockDefault def : this.block_defaults) {
             if (def.block_type == BLOCK_PARA) {
-                block_default = def;
+                stream_table_default = def;
                 break;
             }
         }
-        PdfPTable pdf_table;
+        try {
+            stream_table = createTable(attrs);
+        } catch (DocumentException e) {
+            throw new IOException(e);
+        }
+        stream_table.setComplete(false);
+        stream_table_event = RenderEvents.INSTANCE.begin(
+                RenderEvents.TABLE_WRITE);
+        stream_table_page = writer.getPageNumber();
+        stream_table_cells = 0;
+    }
 
+    @Override
+    public void addTableCell(TextChunk text_chunk) throws IOException {
+        if (stream_table == null) {
+            return;
+        }
         try {
-            pdf_table = createTable(table.getAttrs());
-            if (pdf_table == null) {
-                return;
+            stream_table.addCell(createTableCell(text_chunk,
+                    stream_table_default));
+            stream_table_cells++;
+            if (stream_table.size() - stream_table.getHeaderRows()
+                    >= TABLE_FLUSH_ROWS) {
+                document.add(stream_table);
             }
-        } catch (DocumentException e1) {
-            throw new IOException(e1);
+        } catch (DocumentException e) {
+            throw new IOException(e);
         }
+    }
 
-        for (TextChunk text_chunk : table.getCells()) {
-            try {
-                pdf_table.addCell(createTableCell(text_chunk, block_default));
-            } catch (DocumentException e) {
-                throw new IOException(e);
-            }
+    @Override
+    public void endTable() throws IOException {
+        if (stream_table == null) {
+            return;
         }
+        PdfPTable pdf_table = stream_table;
+        stream_table = null;
         try {
             pdf_table.completeRow();
+            pdf_table.setComplete(true);
             document.add(pdf_table);
         } catch (DocumentException e) {
             throw new IOException(e);
         }
+        if (stream_table_event != null) {
+            RenderEvents.INSTANCE.commitTableWrite(stream_table_event,
+                    template_name, stream_table_page, writer.getPageNumber(),
+                    stream_table_cells);
+            stream_table_event = null;
+        }
     }
 
 }
@@ -777,20 +966,34 @@ public class PDFDoc extends TextDoc {
 
 /**
  * 处理 PDF 事件
+ * <p>
+ * 在生成 PDF 的同时添加水印、页码、页眉和二维码，效果与 PDFProcess
+ * 相同，但不需要再读入生成好的文件重写一遍。
+ * 页码中的总页数在文档结束时才知道，所以每页的页码先画到一个
+ * PdfTemplate 中，在 onCloseDocument() 中再填入内容。
  */
 class PDFDocPageEvent extends PdfPageEventHelper {
     int page_num;
-    PdfTemplate total;
 
-    @Override
-    public void onOpenDocument(PdfWriter writer, Document document) {
-        total = writer.getDirectContent().createTemplate(30, 16);
-    }
-
-    @Override
-    public void onCloseDocument(PdfWriter writer, Document document) {
-        ColumnText.showTextAligned(total, Element.ALIGN_LEFT,
-                new Phrase(String.valueOf(writer.getPageNumber() - 1)), 2, 2, 0);
+    String marker_text = null;
+    float marker_opacity;
+    int marker_angle;
+    int marker_font_size;
+    int marker_style;
+    BaseColor marker_color = BaseColor.GRAY;
+
+    boolean show_page_num = false;
+    String header_text = null;
+    String qrcode_contents = null;
+    int font_family = PDFDoc.FONT_FAMILY_SONG;
+
+    private List<PdfTemplate> page_num_templates = new ArrayList<PdfTemplate>();
+    // 水印只绘制一次，每种页面大小一个 Form XObject
+    private Map<String, PdfTemplate> marker_templates = new HashMap<String, PdfTemplate>();
+
+    boolean isEmpty() {
+        return marker_text == null && !show_page_num &&
+                header_text == null && qrcode_contents == null;
     }
 
     @Override
@@ -800,67 +1003,60 @@ class PDFDocPageEvent extends PdfPageEventHelper {
 
     @Override
     public void onEndPage(PdfWriter writer, Document document) {
-        PdfPTable table = new PdfPTable(3);
+        Rectangle page_size = document.getPageSize();
+        float width = page_size.getWidth();
+        float height = page_size.getHeight();
+
         try {
-            table.setWidths(new int[]{24, 24, 2});
-            table.setTotalWidth(527);
-            table.setLockedWidth(true);
-            table.getDefaultCell().setFixedHeight(20);
-            table.getDefaultCell().setBorder(Rectangle.BOTTOM);
-            table.addCell("页眉");
-            table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_CENTER);
-            table.addCell(String.format("Page %d of", writer.getPageNumber()));
-            PdfPCell cell = new PdfPCell(Image.getInstance(total));
-            cell.setBorder(Rectangle.BOTTOM);
-            table.addCell(cell);
-            table.writeSelectedRows(0, -1, 34, 803, writer.getDirectContent());
-        } catch (DocumentException de) {
-            de.printStackTrace();
+            if (qrcode_contents != null && page_num == 1) {
+                float size = 80;
+                PdfContentByte content = writer.getDirectContentUnder();
+                PdfTemplate template = QRCodeCache.createTemplate(content,
+                        qrcode_contents, size);
+                content.addTemplate(template, width - size + 10, height - size);
+            }
+            if (marker_text != null) {
+                PdfContentByte content = writer.getDirectContentUnder();
+                String key = width + "x" + height;
+                PdfTemplate template = marker_templates.get(key);
+                if (template == null) {
+                    template = PDFProcess.createTextMarker(content,
+                            FontRegistry.getBaseFont(font_family), marker_color,
+                            marker_text, marker_opacity, marker_angle,
+                            marker_font_size, marker_style, width, height);
+                    marker_templates.put(key, template);
+                }
+                content.addTemplate(template, 0, 0);
+            }
+            if (show_page_num) {
+                // 总页数还不知道，先占位，文档结束时再绘制
+                PdfContentByte content = writer.getDirectContentUnder();
+                PdfTemplate template = content.createTemplate(width, 60);
+                content.addTemplate(template, 0, 0);
+                page_num_templates.add(template);
+            }
+            if (header_text != null) {
+                PDFProcess.drawHeader(writer.getDirectContent(),
+                        header_text, height);
+            }
+        } catch (Exception e) {
+            throw new ExceptionConverter(e);
         }
     }
 
     @Override
-    public void onGenericTag(PdfWriter writer, Document pdfDocument,
-                             Rectangle rect, String text) {
-
-    }
-
-    @Override
-    public void onParagraph(
-            PdfWriter writer, Document pdfDocument,
-            float paragraphPosition) {
-
-    }
-
-    @Override
-    public void onParagraphEnd(
-            PdfWriter writer, Document pdfDocument,
-            float paragraphPosition) {
-    }
-
-    @Override
-    public void onChapter(
-            PdfWriter writer, Document document,
-            float position, Paragraph title) {
-
-    }
-
-    @Override
-    public void onChapterEnd(
-            PdfWriter writer, Document document, float position) {
-
-    }
-
-    @Override
-    public void onSection(
-            PdfWriter writer, Document document,
-            float position, int depth, Paragraph title) {
-    }
-
-    @Override
-    public void onSectionEnd(
-            PdfWriter writer, Document document, float position) {
-
+    public void onCloseDocument(PdfWriter writer, Document document) {
+        int total_pages = page_num_templates.size();
+        try {
+            BaseFont base_font = FontRegistry.getBaseFont(font_family);
+            for (int i = 0; i < total_pages; i++) {
+                PdfTemplate template = page_num_templates.get(i);
+                PDFProcess.drawPageNum(template, base_font, i + 1,
+                        total_pages, template.getWidth());
+            }
+        } catch (IOException e) {
+            throw new ExceptionConverter(e);
+        }
     }
 
 }
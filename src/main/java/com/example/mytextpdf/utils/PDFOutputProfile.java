@@ -0,0 +1,61 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * PDF 输出方式
+ *
+ * 控制内容流和图片的压缩级别、是否使用 PDF 1.5 的对象流和交叉引用流
+ * (full compression)以及 PDF 版本。只影响文件的大小和生成速度，
+ * 页面内容完全相同。
+ */
+public enum PDFOutputProfile
+{
+	/**
+	 * 最快，适合在线预览，文件稍大
+	 */
+	FAST(1, false, PdfWriter.VERSION_1_4),
+
+	/**
+	 * 默认，压缩级别 6，文本流上与级别 9 的大小相差很少，速度快很多
+	 */
+	BALANCED(6, false, PdfWriter.VERSION_1_4),
+
+	/**
+	 * 最小的文件，适合归档，使用对象流和交叉引用流，需要 PDF 1.5
+	 */
+	ARCHIVE(9, true, PdfWriter.VERSION_1_5);
+
+	private final int compression_level;
+	private final boolean full_compression;
+	private final char pdf_version;
+
+	private PDFOutputProfile(int compression_level, boolean full_compression,
+			char pdf_version) {
+		this.compression_level = compression_level;
+		this.full_compression = full_compression;
+		this.pdf_version = pdf_version;
+	}
+
+	/**
+	 * 内容流和图片的 deflate 压缩级别，0 - 9
+	 */
+	public int getCompressionLevel() {
+		return compression_level;
+	}
+
+	/**
+	 * 是否使用对象流和交叉引用流
+	 */
+	public boolean isFullCompression() {
+		return full_compression;
+	}
+
+	/**
+	 * PDF 版本，PdfWriter.VERSION_1_X
+	 */
+	public char getPdfVersion() {
+		return pdf_version;
+	}
+
+}
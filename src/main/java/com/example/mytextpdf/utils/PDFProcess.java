@@ -22,22 +22,20 @@
  */
 package com.example.mytextpdf.utils;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
-import com.google.zxing.Writer;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.itextpdf.text.*;
+import com.itextpdf.text.io.RandomAccessSource;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
 import com.itextpdf.text.pdf.*;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
-import java.util.Hashtable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * PDF 后期处理
@@ -51,42 +49,144 @@ public class PDFProcess {
 
     private PdfReader reader;
     private PdfStamper stamper;
+    private FileChannel channel = null;
+    private boolean owned_channel = false;
+    private boolean append;
 
     private int font_family;
     private BaseColor color;
+    // 统计后处理耗时，从创建 PdfStamper 开始计算
+    private final long start_nanos = RenderMetrics.get().start();
+    // 记录 JFR 事件时统计输出的字节数
+    private CountingOutputStream output_counter = null;
 
     public PDFProcess(InputStream pdf_in_stream,
                       OutputStream pdf_out_stream) throws IOException {
+        this(pdf_in_stream, pdf_out_stream, false);
+    }
+
+    /**
+     * @param pdf_in_stream  输入流
+     * @param pdf_out_stream 输出流
+     * @param append         为 true 时使用增量更新方式保存，原文件内容原样输出，
+     *                       只在后面追加修改过的对象。增量更新不能加密
+     * @throws IOException
+     */
+    public PDFProcess(InputStream pdf_in_stream,
+                      OutputStream pdf_out_stream,
+                      boolean append) throws IOException {
+        this(new PdfReader(pdf_in_stream), null, false, pdf_out_stream, append);
+    }
+
+    /**
+     * 从文件读取 PDF，文件通过内存映射访问，并且只读入需要用到的对象，
+     * 处理大文件时不需要将整个文件读入堆内存。finish() 时关闭文件。
+     *
+     * @param pdf_path       PDF 文件路径
+     * @param pdf_out_stream 输出流
+     * @throws IOException
+     */
+    public PDFProcess(Path pdf_path,
+                      OutputStream pdf_out_stream) throws IOException {
+        this(pdf_path, pdf_out_stream, false);
+    }
+
+    public PDFProcess(Path pdf_path,
+                      OutputStream pdf_out_stream,
+                      boolean append) throws IOException {
+        this(FileChannel.open(pdf_path, StandardOpenOption.READ), true,
+                pdf_out_stream, append);
+    }
+
+    /**
+     * 从文件通道读取 PDF，文件通过内存映射访问，并且只读入需要用到的对象。
+     * 文件通道由调用者负责关闭，在 finish() 之前不能关闭。
+     *
+     * @param pdf_channel    PDF 文件通道
+     * @param pdf_out_stream 输出流
+     * @throws IOException
+     */
+    public PDFProcess(FileChannel pdf_channel,
+                      OutputStream pdf_out_stream) throws IOException {
+        this(pdf_channel, pdf_out_stream, false);
+    }
+
+    public PDFProcess(FileChannel pdf_channel,
+                      OutputStream pdf_out_stream,
+                      boolean append) throws IOException {
+        this(pdf_channel, false, pdf_out_stream, append);
+    }
+
+    /**
+     * @param owned_channel 为 true 时由 PDFProcess 关闭文件通道，
+     *                      构造失败时立即关闭
+     */
+    private PDFProcess(FileChannel pdf_channel,
+                       boolean owned_channel,
+                       OutputStream pdf_out_stream,
+                       boolean append) throws IOException {
+        this(openPartial(pdf_channel, owned_channel), pdf_channel,
+                owned_channel, pdf_out_stream, append);
+    }
 
+    private PDFProcess(PdfReader reader,
+                       FileChannel channel,
+                       boolean owned_channel,
+                       OutputStream pdf_out_stream,
+                       boolean append) throws IOException {
+        this.reader = reader;
+        this.channel = channel;
+        this.owned_channel = owned_channel;
+        this.append = append;
+        boolean opened = false;
         try {
-            reader = new PdfReader(pdf_in_stream);
-            stamper = new PdfStamper(reader, pdf_out_stream);
+            if (RenderEvents.INSTANCE.isEnabled(RenderEvents.PDF_PROCESS)) {
+                output_counter = new CountingOutputStream(pdf_out_stream);
+                pdf_out_stream = output_counter;
+            }
+            stamper = new PdfStamper(reader, pdf_out_stream, '\0', append);
+            opened = true;
         } catch (DocumentException e) {
             throw new IOException(e);
+        } finally {
+            if (!opened) {
+                closeInput();
+            }
         }
 
         this.font_family = FONT_FAMILY_SONG;
         this.color = BaseColor.GRAY;
     }
 
-    private BaseFont getBaseFont(int font_family) throws IOException {
-        BaseFont base_font = null;
+    private static PdfReader openPartial(FileChannel pdf_channel,
+                                         boolean owned_channel)
+            throws IOException {
         try {
-            switch (font_family) {
-                case FONT_FAMILY_HEI:
-                    base_font = BaseFont.createFont(PDFContant.resourcePath+"font/SIMHEI.TTF",
-                            BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                    break;
-                case FONT_FAMILY_SONG:
-                    base_font = BaseFont.createFont(PDFContant.resourcePath+"font/SIMSUN.TTC,0",
-                            BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                    break;
+            RandomAccessSource source = new RandomAccessSourceFactory()
+                    .createBestSource(pdf_channel);
+            return new PdfReader(new RandomAccessFileOrArray(source), null);
+        } catch (IOException | RuntimeException e) {
+            if (owned_channel) {
+                pdf_channel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 从文件读取时关闭 PdfReader 及自己打开的文件通道
+     */
+    private void closeInput() throws IOException {
+        if (channel != null) {
+            reader.close();
+            if (owned_channel) {
+                channel.close();
             }
-        } catch (DocumentException e) {
-            throw new IOException(e);
         }
+    }
 
-        return base_font;
+    private BaseFont getBaseFont(int font_family) throws IOException {
+        return FontRegistry.getBaseFont(font_family);
     }
 
     /**
@@ -95,10 +195,50 @@ public class PDFProcess {
      * @throws IOException
      */
     public void finish() throws IOException {
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
+        int pages = reader.getNumberOfPages();
         try {
             this.stamper.close();
+            if (event != null) {
+                RenderEvents.INSTANCE.commitProcess(event, "finish", pages,
+                        output_counter == null ? 0 : output_counter.count);
+            }
         } catch (DocumentException e) {
             throw new IOException(e);
+        } finally {
+            closeInput();
+            RenderMetrics.get().stop(RenderMetrics.PHASE_STAMP, start_nanos);
+        }
+    }
+
+    /**
+     * 设置保存时的输出方式，在 finish() 之前调用。
+     * 增量更新方式只能追加对象，不使用对象流和交叉引用流。
+     *
+     * @param output_profile 输出方式
+     * @throws IOException
+     */
+    public void setOutputProfile(PDFOutputProfile output_profile)
+            throws IOException {
+        stamper.getWriter().setCompressionLevel(
+                output_profile.getCompressionLevel());
+        if (output_profile.isFullCompression() && !append) {
+            try {
+                stamper.setFullCompression();
+            } catch (DocumentException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * 记录一个操作的 JFR 事件
+     */
+    private void commitEvent(Object event, String operation) {
+        if (event != null) {
+            RenderEvents.INSTANCE.commitProcess(event, operation,
+                    reader.getNumberOfPages(),
+                    output_counter == null ? 0 : output_counter.count);
         }
     }
 
@@ -117,40 +257,76 @@ public class PDFProcess {
         if (text == null || text.length() == 0)
             return;
 
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         int total_pages = reader.getNumberOfPages();
 
+        // 水印只绘制一次，保存为 Form XObject，每一页只是引用它，
+        // 不同大小的页面各自使用一个 XObject
+        Map<String, PdfTemplate> templates = new HashMap<String, PdfTemplate>();
+        BaseFont base_font = getBaseFont(font_family);
+
         for (int i = 1; i <= total_pages; i++) {
             Rectangle page_rect = reader.getPageSizeWithRotation(i);
-            float width = page_rect.getWidth();
-            float height = page_rect.getHeight();
-            float text_width = font_size * text.length();
+            PdfContentByte content = stamper.getUnderContent(i);
+            String key = page_rect.getWidth() + "x" + page_rect.getHeight();
+            PdfTemplate template = templates.get(key);
+            if (template == null) {
+                template = createTextMarker(content, base_font, color, text,
+                        opacity, angle, font_size, style,
+                        page_rect.getWidth(), page_rect.getHeight());
+                templates.put(key, template);
+            }
+            content.addTemplate(template, 0, 0);
+        }
+        commitEvent(event, "addTextMarker");
+    }
+
+    /**
+     * 创建一个包含文字水印的 Form XObject，大小与页面相同，
+     * PDFDoc 在生成时也通过这个函数创建水印
+     */
+    static PdfTemplate createTextMarker(PdfContentByte content,
+                                        BaseFont base_font, BaseColor color,
+                                        String text, float opacity,
+                                        int angle, int font_size, int style,
+                                        float width, float height) {
+        PdfTemplate template = content.createTemplate(width, height);
+        drawTextMarker(template, base_font, color, text, opacity,
+                angle, font_size, style, width, height);
+        return template;
+    }
 
-            PdfGState gs = new PdfGState();
-            gs.setFillOpacity(opacity);
+    private static void drawTextMarker(PdfContentByte content,
+                                       BaseFont base_font, BaseColor color,
+                                       String text, float opacity,
+                                       int angle, int font_size, int style,
+                                       float width, float height) {
+        float text_width = font_size * text.length();
 
-            PdfContentByte content = stamper.getUnderContent(i);
-            content.beginText();
-            content.setGState(gs);
-            content.setColorFill(color);
-            content.setFontAndSize(getBaseFont(font_family), font_size);
-            content.setTextMatrix(10, 10);
-
-            switch (style) {
-                case MARKER_STYLE_CENTER:
-                    content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
-                            text, width / 2 - text_width / 2, height / 2, angle);
-                    break;
-                case MARKER_STYLE_FULL:
-                    for (float y = height - 20; y > -height + 20; y -= 100) {
-                        for (float x = 10; x < width - 10; x += text_width) {
-                            content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
-                                    text, x, y, angle);
-                        }
+        PdfGState gs = new PdfGState();
+        gs.setFillOpacity(opacity);
+
+        content.beginText();
+        content.setGState(gs);
+        content.setColorFill(color);
+        content.setFontAndSize(base_font, font_size);
+        content.setTextMatrix(10, 10);
+
+        switch (style) {
+            case MARKER_STYLE_CENTER:
+                content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
+                        text, width / 2 - text_width / 2, height / 2, angle);
+                break;
+            case MARKER_STYLE_FULL:
+                for (float y = height - 20; y > -height + 20; y -= 100) {
+                    for (float x = 10; x < width - 10; x += text_width) {
+                        content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
+                                text, x, y, angle);
                     }
-                    break;
-            }
-            content.endText();
+                }
+                break;
         }
+        content.endText();
     }
 
     /**
@@ -171,6 +347,7 @@ public class PDFProcess {
         if (img_filename == null) {
             return;
         }
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         Image image = null;
         Rectangle page_rect;
         int total_pages = reader.getNumberOfPages();
@@ -201,6 +378,7 @@ public class PDFProcess {
                 throw new IOException(e);
             }
         }
+        commitEvent(event, "addImgMarker");
     }
 
     /**
@@ -221,6 +399,7 @@ public class PDFProcess {
         if (img_filename == null) {
             return;
         }
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         Image image = null;
         Rectangle page_rect;
         int total_pages = reader.getNumberOfPages();
@@ -240,6 +419,7 @@ public class PDFProcess {
 			}
 
         }
+        commitEvent(event, "addImgMarker");
     }
 
 	private float pageAddImage(float x, float y, float height, Image image, PdfGState gs, int i) throws IOException {
@@ -259,31 +439,6 @@ public class PDFProcess {
 		return x;
 	}
 
-	/**
-     * 生成二维码图片
-     *
-     * @param text
-     * @throws IOException
-     */
-    private void createQRCode(String contents, int width,
-                              int height, File img_file) throws IOException {
-        try {
-            Hashtable<EncodeHintType, Object> hints =
-                    new Hashtable<EncodeHintType, Object>();
-
-            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-            hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
-
-            Writer writer = new MultiFormatWriter();
-            BitMatrix bitMatrix = writer.encode(contents,
-                    BarcodeFormat.QR_CODE, width, height, hints);
-
-            MatrixToImageWriter.writeToPath(bitMatrix, "png", img_file.toPath());
-        } catch (Exception ex) {
-            throw new IOException(ex);
-        }
-    }
-
     /**
      * 添加一个二维码到第一页
      *
@@ -291,11 +446,14 @@ public class PDFProcess {
      * @throws IOException
      */
     public void addQRCode(String contents) throws IOException {
-        int width = 80;
-        File tmpfile = File.createTempFile("qrcode", ".png");
-        createQRCode(contents, 256, 256, tmpfile);
-        addImgMarker(tmpfile.getAbsolutePath(),
-                -width + 10, 0, width, width, 1.0f, true);
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
+        float width = 80;
+        Rectangle page_rect = reader.getPageSizeWithRotation(1);
+        PdfContentByte content = stamper.getUnderContent(1);
+        PdfTemplate template = QRCodeCache.createTemplate(content, contents, width);
+        content.addTemplate(template, page_rect.getWidth() - width + 10,
+                page_rect.getHeight() - width);
+        commitEvent(event, "addQRCode");
     }
 
     /**
@@ -305,41 +463,62 @@ public class PDFProcess {
      * @throws MalformedURLException
      */
     public void addHeader(String text) throws IOException {
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         for (int i = 1; i <= reader.getNumberOfPages(); i++) {
             Rectangle page_size = reader.getPageSize(i);
-            PdfPTable table = new PdfPTable(1);
-            table.setTotalWidth(400);
-            table.setLockedWidth(true);
-            table.getDefaultCell().setFixedHeight(20);
-            table.getDefaultCell().setBorder(Rectangle.BOTTOM);
-            table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_LEFT);
-            table.addCell(text);
-            table.writeSelectedRows(0, -1, 50, page_size.getHeight() - 20,
-                    stamper.getOverContent(i));
+            drawHeader(stamper.getOverContent(i), text, page_size.getHeight());
         }
+        commitEvent(event, "addHeader");
+    }
+
+    /**
+     * 在页面上绘制页眉
+     */
+    static void drawHeader(PdfContentByte content, String text,
+                           float page_height) {
+        PdfPTable table = new PdfPTable(1);
+        table.setTotalWidth(400);
+        table.setLockedWidth(true);
+        table.getDefaultCell().setFixedHeight(20);
+        table.getDefaultCell().setBorder(Rectangle.BOTTOM);
+        table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_LEFT);
+        table.addCell(text);
+        table.writeSelectedRows(0, -1, 50, page_height - 20, content);
     }
 
     public void addPageNum() throws IOException {
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         int total_pages = reader.getNumberOfPages();
 
+        for (int i = 1; i <= total_pages; i++) {
+            Rectangle page_rect = reader.getPageSizeWithRotation(i);
+            drawPageNum(stamper.getUnderContent(i), getBaseFont(font_family),
+                    i, total_pages, page_rect.getWidth());
+        }
+        commitEvent(event, "addPageNum");
+    }
+
+    /**
+     * 在页面底部绘制页码
+     */
+    static void drawPageNum(PdfContentByte content, BaseFont base_font,
+                            int page_no, int total_pages, float page_width) {
         PdfGState gs = new PdfGState();
         gs.setFillOpacity(1.0f);
 
-        for (int i = 1; i <= total_pages; i++) {
-            PdfContentByte content = stamper.getUnderContent(i);
-            content.beginText();
-            content.setGState(gs);
-            content.setColorFill(BaseColor.BLACK);
-            content.setFontAndSize(getBaseFont(font_family), 11);
+        content.beginText();
+        content.setGState(gs);
+        content.setColorFill(BaseColor.BLACK);
+        content.setFontAndSize(base_font, 11);
 
-            Rectangle page_rect = reader.getPageSizeWithRotation(i);
-            String text = String.format("- 第 %d 页 共 %d 页 -", i, total_pages);
-            content.showTextAligned(Element.ALIGN_CENTER,
-                    text, page_rect.getWidth() / 2, 30, 0);
-            content.endText();
-        }
+        String text = String.format("- 第 %d 页 共 %d 页 -", page_no, total_pages);
+        content.showTextAligned(Element.ALIGN_CENTER,
+                text, page_width / 2, 30, 0);
+        content.endText();
     }
 
+    static final String DEFAULT_OWNER_PASSWD = "LuckyByte.TextPdf.default";
+
     public static final int ALLOW_PRINTING = PdfWriter.ALLOW_PRINTING;
     public static final int ALLOW_DEGRADED_PRINTING = PdfWriter.ALLOW_DEGRADED_PRINTING;
     public static final int ALLOW_MODIFY_CONTENTS = PdfWriter.ALLOW_MODIFY_CONTENTS;
@@ -351,9 +530,14 @@ public class PDFProcess {
 
     public void encrypt(String user_passwd, String owner_passwd,
                         int permissions) throws Exception {
+        if (append) {
+            throw new IOException(
+                    "Encryption is not supported in append mode.");
+        }
         if (owner_passwd == null) {
-            owner_passwd = "LuckyByte.TextPdf.default";
+            owner_passwd = DEFAULT_OWNER_PASSWD;
         }
+        Object event = RenderEvents.INSTANCE.begin(RenderEvents.PDF_PROCESS);
         try {
             stamper.setEncryption(PdfWriter.ENCRYPTION_AES_128 |
                             PdfWriter.DO_NOT_ENCRYPT_METADATA,
@@ -361,6 +545,7 @@ public class PDFProcess {
         } catch (DocumentException ex) {
             throw new Exception(ex);
         }
+        commitEvent(event, "encrypt");
     }
 
 }
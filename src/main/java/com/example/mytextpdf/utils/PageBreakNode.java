@@ -0,0 +1,14 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+
+/**
+ * pagebreak 元素
+ */
+class PageBreakNode extends TemplateNode
+{
+	@Override
+	void render(RenderContext context) throws IOException {
+		context.text_doc.newPage();
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.mytextpdf.utils;
+
+/**
+ * 一次生成中静态页面缓存的使用情况
+ *
+ * 模板中两个 pagebreak 之间不包含数据的部分称为静态段，
+ * 静态段排版一次后缓存，之后生成的文档直接引用缓存的页面。
+ */
+public class PageCacheStats
+{
+	private int hits = 0;
+	private int misses = 0;
+	private int pages = 0;
+	private long layout_nanos = 0;
+	private long saved_nanos = 0;
+
+	/**
+	 * 静态段命中缓存
+	 * @param pages 页数
+	 * @param layout_nanos 这一段原来排版的耗时
+	 */
+	void hit(int pages, long layout_nanos) {
+		this.hits++;
+		this.pages += pages;
+		this.saved_nanos += layout_nanos;
+	}
+
+	/**
+	 * 静态段没有缓存，排版后放入缓存
+	 * @param pages 页数
+	 * @param layout_nanos 排版耗时
+	 */
+	void miss(int pages, long layout_nanos) {
+		this.misses++;
+		this.pages += pages;
+		this.layout_nanos += layout_nanos;
+	}
+
+	/**
+	 * 命中缓存的静态段数
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * 需要排版的静态段数
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * 命中率，没有静态段时为 0
+	 */
+	public double getHitRatio() {
+		int total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * 静态段的总页数
+	 */
+	public int getStaticPages() {
+		return pages;
+	}
+
+	/**
+	 * 排版静态段的耗时，毫秒
+	 */
+	public double getLayoutMillis() {
+		return layout_nanos / 1.0e6;
+	}
+
+	/**
+	 * 命中缓存节省的排版时间，毫秒
+	 */
+	public double getSavedMillis() {
+		return saved_nanos / 1.0e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("static pages=%d, hits=%d, misses=%d, "
+				+ "hit ratio=%.2f, layout=%.1fms, saved=%.1fms",
+				pages, hits, misses, getHitRatio(), getLayoutMillis(),
+				getSavedMillis());
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.Rectangle;
+
+import java.io.IOException;
+
+/**
+ * page 元素，设置页面大小、边距并换页
+ */
+class PageNode extends TemplateNode
+{
+	final Rectangle page_size;
+	final int[] margin;
+
+	PageNode(Rectangle page_size, int[] margin) {
+		this.page_size = page_size;
+		this.margin = margin;
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		apply(context.text_doc);
+		context.text_doc.newPage();
+	}
+
+	/**
+	 * 设置之后页面的大小和边距
+	 */
+	void apply(TextDoc text_doc) {
+		if (page_size != null) {
+			text_doc.setPageSize(page_size);
+		}
+		if (margin != null) {
+			text_doc.setPageMargin(margin[0], margin[1],
+					margin[2], margin[3]);
+		}
+	}
+}
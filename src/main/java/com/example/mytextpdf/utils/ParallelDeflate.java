@@ -0,0 +1,395 @@
+package com.example.mytextpdf.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 在 ForkJoinPool 中并行压缩 PDF 中的流
+ *
+ * PdfWriter 在每页结束、加入图片、关闭时写出字体的时候就在调用线程中
+ * 逐个压缩流，没有办法把压缩交给其它线程。并行模式下 PDFDoc 用
+ * 压缩级别 0 写到缓冲区，此时 FlateDecode 流中只有不压缩的 stored 块，
+ * 关闭时由这个类取出原始数据，按实际的压缩级别并行压缩，再按原来的
+ * 顺序写出，同时修正 /Length 和交叉引用表。
+ * 压缩的结果只由数据和级别决定，所以输出与顺序压缩的文档相同。
+ *
+ * 只处理 PdfWriter 生成的单个交叉引用表的文档，不支持加密和对象流，
+ * 文档格式不符合时原样输出。
+ */
+final class ParallelDeflate
+{
+	private static final Charset ISO = Charset.forName("ISO-8859-1");
+
+	private static final byte[] STREAM = bytes(">>stream\n");
+	private static final byte[] END_OBJECT = bytes("\nendstream\nendobj\n");
+	private static final byte[] LENGTH = bytes("/Length ");
+
+	// 交叉引用表中每一项的长度，"0000000015 00000 n \n"
+	private static final int XREF_ENTRY = 20;
+
+	private ParallelDeflate() {
+	}
+
+	/**
+	 * 重新压缩文档中以级别 0 写出的流
+	 * @param pdf 压缩级别为 0 的文档
+	 * @param level 实际的压缩级别
+	 * @param pool 压缩使用的线程池
+	 * @param out 输出流
+	 * @return 重新压缩的流数量，文档格式不符合时为 -1
+	 * @throws IOException
+	 */
+	static int rewrite(byte[] pdf, int level, ForkJoinPool pool,
+			OutputStream out) throws IOException {
+		List<XrefObject> objects = parseXref(pdf);
+		if (objects == null) {
+			out.write(pdf);
+			return -1;
+		}
+		List<XrefObject> streams = new ArrayList<XrefObject>();
+		for (XrefObject object : objects) {
+			if (object.findStream(pdf)) {
+				streams.add(object);
+			}
+		}
+		if (!streams.isEmpty()) {
+			pool.invoke(new DeflateTask(pdf, level, streams, 0,
+					streams.size()));
+		}
+		write(pdf, objects, out);
+		int count = 0;
+		for (XrefObject object : streams) {
+			if (object.deflated != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 解析文档末尾的交叉引用表
+	 * @return 按位置排序的对象，格式不符合时返回 null
+	 */
+	private static List<XrefObject> parseXref(byte[] pdf) {
+		int startxref = lastIndexOf(pdf, bytes("startxref\n"));
+		if (startxref < 0) {
+			return null;
+		}
+		int xref = (int) parseNumber(pdf, startxref + 10);
+		if (xref < 0 || xref >= startxref || !startsWith(pdf, xref,
+				bytes("xref\n"))) {
+			return null;
+		}
+		List<XrefObject> objects = new ArrayList<XrefObject>();
+		int pos = xref + 5;
+		while (pos < startxref && pdf[pos] != 't') {
+			// 子段 "起始编号 数量\n"
+			int space = indexOf(pdf, (byte) ' ', pos, startxref);
+			int end = indexOf(pdf, (byte) '\n', pos, startxref);
+			if (space < 0 || end < space) {
+				return null;
+			}
+			long count = parseNumber(pdf, space + 1);
+			pos = end + 1;
+			if (count < 0 || pos + count * XREF_ENTRY > startxref) {
+				return null;
+			}
+			for (int i = 0; i < count; i++, pos += XREF_ENTRY) {
+				if (pdf[pos + 17] == 'n') {
+					objects.add(new XrefObject(pos, (int) parseNumber(pdf,
+							pos)));
+				}
+			}
+		}
+		if (!startsWith(pdf, pos, bytes("trailer\n"))
+				|| indexOf(pdf, bytes("/Prev"), pos, startxref) >= 0
+				|| indexOf(pdf, bytes("/Encrypt"), pos, startxref) >= 0) {
+			return null;
+		}
+		Collections.sort(objects);
+
+		int end = xref;
+		for (int i = objects.size() - 1; i >= 0; i--) {
+			XrefObject object = objects.get(i);
+			if (object.offset < 0 || object.offset >= end) {
+				return null;
+			}
+			object.end = end;
+			end = object.offset;
+		}
+		return objects;
+	}
+
+	/**
+	 * 按原来的顺序写出文档，重新压缩的流替换数据和长度
+	 */
+	private static void write(byte[] pdf, List<XrefObject> objects,
+			OutputStream out) throws IOException {
+		int startxref = lastIndexOf(pdf, bytes("startxref\n"));
+		int xref = (int) parseNumber(pdf, startxref + 10);
+		byte[] table = Arrays.copyOfRange(pdf, xref, startxref);
+
+		long offset = objects.isEmpty() ? xref : objects.get(0).offset;
+		out.write(pdf, 0, (int) offset);
+		for (XrefObject object : objects) {
+			writeOffset(table, object.xref_entry - xref, offset);
+			if (object.deflated == null) {
+				out.write(pdf, object.offset, object.end - object.offset);
+				offset += object.end - object.offset;
+				continue;
+			}
+			byte[] length = bytes(String.valueOf(object.deflated.length));
+			out.write(pdf, object.offset, object.length_start - object.offset);
+			out.write(length);
+			out.write(pdf, object.length_end, object.data_start
+					- object.length_end);
+			out.write(object.deflated);
+			out.write(pdf, object.data_end, object.end - object.data_end);
+			offset += (object.length_start - object.offset) + length.length
+					+ (object.data_start - object.length_end)
+					+ object.deflated.length + (object.end - object.data_end);
+		}
+		out.write(table);
+		out.write(bytes("startxref\n" + offset + "\n%%EOF\n"));
+	}
+
+	private static void writeOffset(byte[] table, int pos, long offset) {
+		for (int i = 9; i >= 0; i--) {
+			table[pos + i] = (byte) ('0' + offset % 10);
+			offset /= 10;
+		}
+	}
+
+	/**
+	 * 取出 zlib 数据中 stored 块的内容
+	 * @return 有压缩的块或者校验错误时返回 null
+	 */
+	static byte[] storedData(byte[] pdf, int start, int end) {
+		// 级别 0 的 zlib 头
+		if (end - start < 6 || pdf[start] != 0x78 || pdf[start + 1] != 0x01) {
+			return null;
+		}
+		ByteArrayOutputStream data = new ByteArrayOutputStream(end - start);
+		int pos = start + 2;
+		boolean last = false;
+		while (!last) {
+			if (pos + 5 > end) {
+				return null;
+			}
+			int header = pdf[pos] & 0xff;
+			// BFINAL 之后的 BTYPE 必须是 00，其余的位为对齐的 0
+			if ((header & ~1) != 0) {
+				return null;
+			}
+			last = (header & 1) == 1;
+			int len = (pdf[pos + 1] & 0xff) | (pdf[pos + 2] & 0xff) << 8;
+			int nlen = (pdf[pos + 3] & 0xff) | (pdf[pos + 4] & 0xff) << 8;
+			if ((len ^ 0xffff) != nlen || pos + 5 + len > end) {
+				return null;
+			}
+			data.write(pdf, pos + 5, len);
+			pos += 5 + len;
+		}
+		if (pos + 4 != end) {
+			return null;
+		}
+		byte[] raw = data.toByteArray();
+		Adler32 adler = new Adler32();
+		adler.update(raw, 0, raw.length);
+		long value = (pdf[pos] & 0xffL) << 24 | (pdf[pos + 1] & 0xff) << 16
+				| (pdf[pos + 2] & 0xff) << 8 | (pdf[pos + 3] & 0xff);
+		return adler.getValue() == value ? raw : null;
+	}
+
+	/**
+	 * 与 PdfStream.flateCompress() 相同的方式压缩
+	 */
+	static byte[] deflate(byte[] raw, int level) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(level);
+		try {
+			DeflaterOutputStream zip = new DeflaterOutputStream(stream,
+					deflater);
+			zip.write(raw);
+			zip.close();
+		} catch (IOException e) {
+			// ByteArrayOutputStream 不会出错
+			throw new IllegalStateException(e);
+		} finally {
+			deflater.end();
+		}
+		return stream.toByteArray();
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(ISO);
+	}
+
+	private static boolean startsWith(byte[] pdf, int pos, byte[] prefix) {
+		if (pos < 0 || pos + prefix.length > pdf.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (pdf[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] pdf, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (pdf[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] pdf, byte[] pattern, int from, int to) {
+		for (int i = from; i + pattern.length <= to; i++) {
+			if (startsWith(pdf, i, pattern)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(byte[] pdf, byte[] pattern) {
+		for (int i = pdf.length - pattern.length; i >= 0; i--) {
+			if (startsWith(pdf, i, pattern)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 解析十进制数字
+	 * @return 没有数字时返回 -1
+	 */
+	private static long parseNumber(byte[] pdf, int pos) {
+		long value = -1;
+		for (; pos < pdf.length && pdf[pos] >= '0' && pdf[pos] <= '9'; pos++) {
+			value = (value < 0 ? 0 : value * 10) + (pdf[pos] - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * 交叉引用表中的一个对象
+	 */
+	private static final class XrefObject implements Comparable<XrefObject>
+	{
+		// 交叉引用表中这一项的位置
+		final int xref_entry;
+		final int offset;
+		// 下一个对象或者交叉引用表的位置
+		int end;
+
+		// /Length 的数字
+		int length_start;
+		int length_end;
+		int data_start;
+		int data_end;
+		byte[] deflated = null;
+
+		XrefObject(int xref_entry, int offset) {
+			this.xref_entry = xref_entry;
+			this.offset = offset;
+		}
+
+		/**
+		 * 是否是可以重新压缩的流: 只有 /FlateDecode 一个过滤器、
+		 * 没有 /DecodeParms、/Length 是直接的数字
+		 */
+		boolean findStream(byte[] pdf) {
+			int dict_end = indexOf(pdf, STREAM, offset, end);
+			if (dict_end < 0 || end - offset < END_OBJECT.length
+					|| !startsWith(pdf, end - END_OBJECT.length, END_OBJECT)) {
+				return false;
+			}
+			int dict_start = indexOf(pdf, bytes("<<"), offset, dict_end);
+			if (dict_start < 0
+					|| indexOf(pdf, bytes("/Filter/FlateDecode"), dict_start,
+							dict_end) < 0
+					|| indexOf(pdf, bytes("/DecodeParms"), dict_start,
+							dict_end) >= 0) {
+				return false;
+			}
+			length_start = indexOf(pdf, LENGTH, dict_start, dict_end);
+			if (length_start < 0 || indexOf(pdf, LENGTH,
+					length_start + LENGTH.length, dict_end) >= 0) {
+				return false;
+			}
+			length_start += LENGTH.length;
+			long length = parseNumber(pdf, length_start);
+			length_end = length_start;
+			while (pdf[length_end] >= '0' && pdf[length_end] <= '9') {
+				length_end++;
+			}
+			// 间接引用 "/Length 12 0 R" 之类的格式不处理
+			if (length < 0 || (pdf[length_end] != '/' && pdf[length_end] != '>')) {
+				return false;
+			}
+			data_start = dict_end + STREAM.length;
+			data_end = end - END_OBJECT.length;
+			return data_start + length == data_end;
+		}
+
+		@Override
+		public int compareTo(XrefObject other) {
+			return offset < other.offset ? -1 : (offset == other.offset ? 0 : 1);
+		}
+	}
+
+	/**
+	 * 把流分成两半分别压缩
+	 */
+	private static final class DeflateTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] pdf;
+		private final int level;
+		private final List<XrefObject> streams;
+		private final int from;
+		private final int to;
+
+		DeflateTask(byte[] pdf, int level, List<XrefObject> streams,
+				int from, int to) {
+			this.pdf = pdf;
+			this.level = level;
+			this.streams = streams;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DeflateTask(pdf, level, streams, from, middle),
+						new DeflateTask(pdf, level, streams, middle, to));
+				return;
+			}
+			XrefObject object = streams.get(from);
+			byte[] raw = storedData(pdf, object.data_start, object.data_end);
+			if (raw != null) {
+				object.deflated = deflate(raw, level);
+			}
+		}
+	}
+
+}
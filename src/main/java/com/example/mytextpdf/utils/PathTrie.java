@@ -0,0 +1,73 @@
+package com.example.mytextpdf.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模板用到的数据路径组成的树
+ *
+ * 对象的键对应子节点，数组的所有元素共用一个子节点，
+ * all 为 true 表示整个子树都需要。
+ */
+class PathTrie
+{
+	private Map<String, PathTrie> keys = null;
+	private PathTrie elements = null;
+	private boolean all = false;
+
+	boolean isAll() {
+		return all;
+	}
+
+	void setAll() {
+		all = true;
+	}
+
+	PathTrie key(String key) {
+		return keys == null ? null : keys.get(key);
+	}
+
+	PathTrie elements() {
+		return elements;
+	}
+
+	PathTrie addKey(String key) {
+		if (keys == null) {
+			keys = new HashMap<String, PathTrie>();
+		}
+		PathTrie child = keys.get(key);
+		if (child == null) {
+			child = new PathTrie();
+			keys.put(key, child);
+		}
+		return child;
+	}
+
+	PathTrie addElements() {
+		if (elements == null) {
+			elements = new PathTrie();
+		}
+		return elements;
+	}
+
+	/**
+	 * 添加一个路径，返回路径末端的节点
+	 */
+	PathTrie add(ValuePath path) {
+		Object[] segments = path.getSegments();
+		if (segments.length > 1 || (segments.length == 1
+				&& !(segments[0] instanceof String))) {
+			// 键本身包含 . 或 [ 的情况
+			addKey(path.toString()).setAll();
+		}
+		PathTrie node = this;
+		for (Object segment : segments) {
+			if (segment instanceof String) {
+				node = node.addKey((String) segment);
+			} else {
+				node = node.addElements();
+			}
+		}
+		return node;
+	}
+}
@@ -0,0 +1,113 @@
+package com.example.mytextpdf.utils;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Writer;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 二维码生成及缓存
+ *
+ * 二维码直接由 zxing 的 BitMatrix 绘制为 PDF 矢量矩形，不再经过 PNG
+ * 临时文件。相同内容的二维码矩阵只计算一次，缓存最近使用的若干个。
+ */
+class QRCodeCache
+{
+	private static final int MAX_ENTRIES = 256;
+
+	private static final Map<String, BitMatrix> matrices =
+			Collections.synchronizedMap(
+					new LinkedHashMap<String, BitMatrix>(16, 0.75f, true) {
+						@Override
+						protected boolean removeEldestEntry(
+								Map.Entry<String, BitMatrix> eldest) {
+							return size() > MAX_ENTRIES;
+						}
+					});
+
+	private QRCodeCache() {
+	}
+
+	/**
+	 * 取得二维码矩阵，每个点对应一个模块，四周带有 4 个模块的空白
+	 * @param contents 二维码内容
+	 * @return 二维码矩阵，调用者不能修改
+	 * @throws IOException
+	 */
+	static BitMatrix getMatrix(String contents) throws IOException {
+		BitMatrix matrix = matrices.get(contents);
+		RenderMetrics.get().recordCache(RenderMetrics.CACHE_QRCODE,
+				matrix != null);
+		if (matrix != null) {
+			return matrix;
+		}
+		try {
+			Hashtable<EncodeHintType, Object> hints =
+					new Hashtable<EncodeHintType, Object>();
+
+			hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+			hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
+
+			Writer writer = new MultiFormatWriter();
+			matrix = writer.encode(contents, BarcodeFormat.QR_CODE, 0, 0, hints);
+		} catch (Exception ex) {
+			throw new IOException(ex);
+		}
+		matrices.put(contents, matrix);
+		return matrix;
+	}
+
+	/**
+	 * 创建一个绘制了二维码的 Form XObject
+	 * @param content 用于创建 XObject 的页面内容
+	 * @param contents 二维码内容
+	 * @param size XObject 的宽度和高度
+	 * @return
+	 * @throws IOException
+	 */
+	static PdfTemplate createTemplate(PdfContentByte content,
+			String contents, float size) throws IOException {
+		BitMatrix matrix = getMatrix(contents);
+		int width = matrix.getWidth();
+		int height = matrix.getHeight();
+		float module = size / Math.max(width, height);
+
+		PdfTemplate template = content.createTemplate(size, size);
+		template.setColorFill(BaseColor.WHITE);
+		template.rectangle(0, 0, size, size);
+		template.fill();
+
+		// 同一行中连续的黑色模块合并为一个矩形
+		template.setColorFill(BaseColor.BLACK);
+		for (int y = 0; y < height; y++) {
+			float top = size - y * module;
+			int x = 0;
+			while (x < width) {
+				if (!matrix.get(x, y)) {
+					x++;
+					continue;
+				}
+				int start = x;
+				while (x < width && matrix.get(x, y)) {
+					x++;
+				}
+				template.rectangle(start * module, top - module,
+						(x - start) * module, module);
+			}
+		}
+		template.fill();
+		return template;
+	}
+
+}
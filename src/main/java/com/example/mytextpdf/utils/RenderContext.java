@@ -0,0 +1,126 @@
+package com.example.mytextpdf.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 生成文档时的上下文，每次生成创建一个
+ */
+class RenderContext
+{
+	final TextDoc text_doc;
+	final DataSource data_source;
+	final PageCacheStats cache_stats = new PageCacheStats();
+	boolean page_cache = false;
+	SegmentCache segment_cache = null;
+	// 找不到数据时是否输出错误信息
+	boolean report_missing = true;
+	// 数据查找范围，repeat 中的数组元素在后面
+	private final List<Object> scopes = new ArrayList<Object>();
+
+	RenderContext(TextDoc text_doc, DataSource data_source) {
+		this.text_doc = text_doc;
+		this.data_source = data_source;
+
+		if (text_doc instanceof PDFDoc) {
+			Object data = data_source.getData();
+			if (data != null) {
+				scopes.add(data);
+			}
+		} else if (text_doc instanceof HTMLDoc) {
+			((HTMLDoc) text_doc).setTitle(data_source.getTitle());
+		}
+	}
+
+	/**
+	 * 是否有数据可以填入，HTML 编辑页面或者没有数据时为 false
+	 */
+	boolean hasData() {
+		return !scopes.isEmpty();
+	}
+
+	void pushScope(Object scope) {
+		scopes.add(scope);
+	}
+
+	void popScope() {
+		scopes.remove(scopes.size() - 1);
+	}
+
+	/**
+	 * 由内向外查找路径对应的数据
+	 * @return 找不到时返回 ValuePath.NOT_FOUND
+	 */
+	Object resolve(ValuePath path) {
+		for (int i = scopes.size() - 1; i >= 0; i--) {
+			Object scope = scopes.get(i);
+			if (path.matches(scope)) {
+				return path.resolve(scope);
+			}
+		}
+		return ValuePath.NOT_FOUND;
+	}
+
+	/**
+	 * 查找 value 元素对应的数据，找不到返回 null
+	 */
+	String lookupValue(ValuePath path) {
+		if (!(text_doc instanceof PDFDoc) || !hasData()) {
+			return null;
+		}
+		Object value = resolve(path);
+		if (value == ValuePath.NOT_FOUND) {
+			if (report_missing) {
+				System.err.println("JSON data key '" + path + "' not found!");
+				RenderMetrics.get().recordMissingKey();
+			}
+			return null;
+		}
+		if (value instanceof String) {
+			return (String) value;
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return BigDecimal.valueOf(((Number) value).doubleValue())
+					.toPlainString();
+		}
+		if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).toPlainString();
+		}
+		if (value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum) {
+			return value.toString();
+		}
+		if (report_missing) {
+			System.err.println("JSON  data key '" + path
+					+ "' must has a string value.");
+		}
+		return null;
+	}
+
+	/**
+	 * 查找 repeat 元素对应的数组，找不到返回 null
+	 */
+	Iterable<?> lookupArray(ValuePath path) {
+		Object value = resolve(path);
+		if (value == ValuePath.NOT_FOUND) {
+			if (report_missing) {
+				System.err.println("JSON data key '" + path + "' not found!");
+				RenderMetrics.get().recordMissingKey();
+			}
+			return null;
+		}
+		if (value instanceof Iterable) {
+			return (Iterable<?>) value;
+		}
+		if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		}
+		if (value != null && report_missing) {
+			System.err.println("JSON data key '" + path
+					+ "' must has a array value.");
+		}
+		return null;
+	}
+}
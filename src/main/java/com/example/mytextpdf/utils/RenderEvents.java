@@ -0,0 +1,93 @@
+package com.example.mytextpdf.utils;
+
+/**
+ * 单个文档的生成过程事件，用于 Java Flight Recorder
+ *
+ * 运行环境支持 JFR(JDK 11+ 或 8u262+)时使用 JfrRenderEvents，
+ * 否则什么都不做。没有开始记录时 begin() 返回 null，commitXXX() 直接返回，
+ * 所以生产环境可以一直开着，需要时用 JFR 记录慢的文档，在 JMC 中查看。
+ * 系统属性 textpdf.jfr=false 可以关闭。
+ */
+abstract class RenderEvents
+{
+	static final int TEMPLATE_PARSE = 0;
+	static final int DATA_BIND = 1;
+	static final int BLOCK_WRITE = 2;
+	static final int TABLE_WRITE = 3;
+	static final int IMAGE_LOAD = 4;
+	static final int FONT_LOAD = 5;
+	static final int DOCUMENT_RENDER = 6;
+	static final int DOCUMENT_CLOSE = 7;
+	static final int PDF_PROCESS = 8;
+
+	static final RenderEvents INSTANCE = create();
+
+	private static RenderEvents create() {
+		if ("false".equalsIgnoreCase(System.getProperty("textpdf.jfr"))) {
+			return new RenderEvents() {
+			};
+		}
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			// 通过反射创建，没有 JFR 时不会加载事件类
+			return (RenderEvents) Class.forName(
+					"com.example.mytextpdf.utils.JfrRenderEvents")
+					.getDeclaredConstructor().newInstance();
+		} catch (Throwable ex) {
+			return new RenderEvents() {
+			};
+		}
+	}
+
+	/**
+	 * 是否正在记录这种事件
+	 * @param kind 事件类型
+	 */
+	boolean isEnabled(int kind) {
+		return false;
+	}
+
+	/**
+	 * 开始一个事件
+	 * @param kind 事件类型
+	 * @return 没有记录这种事件时返回 null
+	 */
+	Object begin(int kind) {
+		return null;
+	}
+
+	void commitTemplateParse(Object event, String template, long bytes,
+			int nodes) {
+	}
+
+	void commitDataBind(Object event, String template, long total_bytes,
+			long skipped_bytes, long bound_bytes) {
+	}
+
+	void commitBlockWrite(Object event, String template, String block,
+			int page, int chunks) {
+	}
+
+	void commitTableWrite(Object event, String template, int start_page,
+			int end_page, int cells) {
+	}
+
+	void commitImageLoad(Object event, String template, String source,
+			int page, long bytes) {
+	}
+
+	void commitFontLoad(Object event, String font, long bytes) {
+	}
+
+	/**
+	 * DOCUMENT_RENDER 和 DOCUMENT_CLOSE 事件
+	 */
+	void commitDocument(Object event, String template, String type,
+			int pages, long bytes) {
+	}
+
+	void commitProcess(Object event, String operation, int pages,
+			long bytes) {
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.example.mytextpdf.utils;
+
+/**
+ * 生成过程的统计接口
+ *
+ * 默认什么都不做，生成代码中的调用会被 JIT 内联为空操作。
+ * 需要统计时通过 install() 设置一个实现，例如 Spring 中的
+ * MicrometerRenderMetrics。所有方法都可能被多个线程同时调用。
+ */
+public abstract class RenderMetrics
+{
+	/** 解析 JSON 数据 */
+	public static final String PHASE_JSON = "json";
+	/** 解析 XML 模板 */
+	public static final String PHASE_TEMPLATE = "template";
+	/** 排版，包括 iText 生成页面内容 */
+	public static final String PHASE_LAYOUT = "layout";
+	/** 关闭文档，压缩和写出剩余的对象 */
+	public static final String PHASE_CLOSE = "close";
+	/** PDFProcess 后处理，从读入到保存 */
+	public static final String PHASE_STAMP = "stamp";
+
+	/** TextStyle 对应的 iText Font */
+	public static final String CACHE_FONT = "font";
+	/** 字体文件 */
+	public static final String CACHE_BASE_FONT = "basefont";
+	/** 模板中的图片 */
+	public static final String CACHE_IMAGE = "image";
+	/** 二维码 */
+	public static final String CACHE_QRCODE = "qrcode";
+
+	public static final String TYPE_PDF = "pdf";
+	public static final String TYPE_HTML = "html";
+
+	private static final RenderMetrics NOOP = new RenderMetrics() {
+	};
+
+	private static volatile RenderMetrics current = NOOP;
+
+	/**
+	 * 设置统计实现
+	 * @param metrics null 表示不再统计
+	 */
+	public static void install(RenderMetrics metrics) {
+		current = metrics == null ? NOOP : metrics;
+	}
+
+	/**
+	 * 当前的统计实现，没有设置时返回空操作的实现
+	 */
+	public static RenderMetrics get() {
+		return current;
+	}
+
+	/**
+	 * 是否需要统计，为 false 时调用者可以跳过计时等准备工作
+	 */
+	public boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * 一个阶段的耗时
+	 * @param phase PHASE_XXX
+	 * @param nanos 纳秒
+	 */
+	public void recordPhase(String phase, long nanos) {
+	}
+
+	/**
+	 * 生成了一个文档
+	 * @param type TYPE_PDF 或 TYPE_HTML
+	 * @param pages 页数，HTML 为 0
+	 * @param bytes 输出的字节数
+	 */
+	public void recordDocument(String type, int pages, long bytes) {
+	}
+
+	/**
+	 * 模板中的 value 或 repeat 在数据中找不到
+	 */
+	public void recordMissingKey() {
+	}
+
+	/**
+	 * 查找缓存
+	 * @param cache CACHE_XXX
+	 * @param hit 是否命中
+	 */
+	public void recordCache(String cache, boolean hit) {
+	}
+
+	/**
+	 * 开始计时，不需要统计时不读取时钟
+	 */
+	long start() {
+		return isEnabled() ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * 结束计时，开始时还没有统计(start 为 0)的不记录
+	 * @param phase PHASE_XXX
+	 * @param start start() 的返回值
+	 */
+	void stop(String phase, long start) {
+		if (start != 0 && isEnabled()) {
+			recordPhase(phase, System.nanoTime() - start);
+		}
+	}
+
+}
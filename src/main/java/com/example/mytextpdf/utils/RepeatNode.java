@@ -0,0 +1,79 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * repeat 元素，对数组中的每个元素输出一次其中的节点
+ *
+ * 数组元素在迭代时逐个处理，输出的块和表格行不会同时留在内存中。
+ * 没有数据时(例如生成 HTML 编辑页面)输出一次。
+ */
+class RepeatNode extends TemplateNode
+{
+	final ValuePath path;
+	final List<TemplateNode> children;
+
+	RepeatNode(ValuePath path, List<TemplateNode> children) {
+		this.path = path;
+		this.children = Collections.unmodifiableList(
+				new ArrayList<TemplateNode>(children));
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		if (!context.hasData()) {
+			for (TemplateNode node : children) {
+				node.render(context);
+			}
+			return;
+		}
+		Iterable<?> array = context.lookupArray(path);
+		if (array == null) {
+			return;
+		}
+		for (Object item : array) {
+			context.pushScope(item);
+			try {
+				for (TemplateNode node : children) {
+					node.render(context);
+				}
+			} finally {
+				context.popScope();
+			}
+		}
+	}
+
+	@Override
+	void collectPaths(List<PathTrie> scopes) {
+		// 数组元素成为新的查找范围，外层范围仍然可以查找
+		List<PathTrie> inner = new ArrayList<PathTrie>(scopes);
+		for (PathTrie scope : ValuePath.lookupScopes(path, scopes)) {
+			inner.add(scope.add(path).addElements());
+		}
+		for (TemplateNode node : children) {
+			node.collectPaths(inner);
+		}
+	}
+
+	@Override
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+		Iterable<?> array = context.lookupArray(path);
+		if (array != null) {
+			for (Object item : array) {
+				digest.beginItem();
+				context.pushScope(item);
+				try {
+					for (TemplateNode node : children) {
+						node.fingerprint(context, digest);
+					}
+				} finally {
+					context.popScope();
+				}
+			}
+		}
+		digest.endRepeat();
+	}
+}
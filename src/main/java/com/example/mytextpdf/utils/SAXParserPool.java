@@ -0,0 +1,75 @@
+package com.example.mytextpdf.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * SAX 解析器池
+ *
+ * SAXParserFactory.newInstance() 需要查找实现类，newSAXParser() 也要
+ * 创建不少对象，每次编译模板都创建一遍不划算。解析器不是线程安全的，
+ * 所以用完后 reset() 放回池中，取出和放回都不加锁。
+ * SAXParserFactory 也不是线程安全的，只在池中没有解析器时加锁创建。
+ */
+final class SAXParserPool
+{
+	// 池中最多保存的解析器数量，并发更高时多出来的用完丢弃
+	private static final int MAX_PARSERS = 16;
+
+	private static final SAXParserFactory factory;
+	static {
+		factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(false);
+	}
+
+	private static final ConcurrentLinkedQueue<SAXParser> parsers =
+			new ConcurrentLinkedQueue<SAXParser>();
+	private static final AtomicInteger size = new AtomicInteger();
+
+	private SAXParserPool() {
+	}
+
+	/**
+	 * 取出一个解析器，用完后必须调用 release() 放回
+	 * @return
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	static SAXParser acquire()
+			throws ParserConfigurationException, SAXException {
+		SAXParser parser = parsers.poll();
+		if (parser != null) {
+			size.decrementAndGet();
+			return parser;
+		}
+		synchronized (factory) {
+			parser = factory.newSAXParser();
+		}
+		return parser;
+	}
+
+	/**
+	 * 放回解析器，解析出错的解析器也可以放回
+	 * @param parser
+	 */
+	static void release(SAXParser parser) {
+		try {
+			parser.reset();
+		} catch (UnsupportedOperationException ex) {
+			// 不能重置的解析器不再使用
+			return;
+		}
+		if (size.incrementAndGet() > MAX_PARSERS) {
+			size.decrementAndGet();
+			return;
+		}
+		parsers.offer(parser);
+	}
+
+}
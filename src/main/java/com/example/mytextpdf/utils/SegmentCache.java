@@ -0,0 +1,124 @@
+package com.example.mytextpdf.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 段排版结果缓存
+ *
+ * 模板中 pagebreak 分隔的每一段按 "模板中的段 + 排版参数 + 段中用到的数据"
+ * 计算指纹，指纹相同的段直接使用缓存的页面，不再排版。
+ * 例如只修改了一个字段后重新生成合同，只有用到这个字段的段需要重新排版。
+ * 缓存按最近使用顺序淘汰，占用的字节数不超过指定的上限，
+ * 可以被多个模板、多个线程共享。
+ */
+public class SegmentCache
+{
+	private final long max_bytes;
+	private final LinkedHashMap<String, SegmentPages> entries =
+			new LinkedHashMap<String, SegmentPages>(16, 0.75f, true);
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param max_bytes 缓存的 PDF 数据最多占用的字节数
+	 */
+	public SegmentCache(long max_bytes) {
+		this.max_bytes = max_bytes;
+	}
+
+	synchronized SegmentPages get(String key) {
+		SegmentPages pages = entries.get(key);
+		if (pages == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return pages;
+	}
+
+	synchronized void put(String key, SegmentPages pages) {
+		long size = sizeOf(pages);
+		if (size > max_bytes) {
+			return;
+		}
+		SegmentPages old = entries.put(key, pages);
+		if (old != null) {
+			bytes -= sizeOf(old);
+		}
+		bytes += size;
+
+		Iterator<SegmentPages> iterator = entries.values().iterator();
+		while (bytes > max_bytes && iterator.hasNext()) {
+			bytes -= sizeOf(iterator.next());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	private static long sizeOf(SegmentPages pages) {
+		return pages.pdf == null ? 0 : pages.pdf.length;
+	}
+
+	/**
+	 * 清空缓存，计数器不变
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * 缓存的段数
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * 缓存占用的字节数
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * 命中次数
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * 未命中次数
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * 因为超过字节上限而淘汰的段数
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * 命中率，还没有查找过时为 0
+	 */
+	public synchronized double getHitRatio() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("segments=%d, bytes=%d/%d, hits=%d, misses=%d, "
+				+ "hit ratio=%.2f, evictions=%d", entries.size(), bytes,
+				max_bytes, hits, misses, getHitRatio(), evictions);
+	}
+
+}
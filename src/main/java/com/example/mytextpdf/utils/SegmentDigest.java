@@ -0,0 +1,72 @@
+package com.example.mytextpdf.utils;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 计算段指纹，按顺序加入段中用到的数据
+ */
+class SegmentDigest
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MessageDigest digest;
+	private final StringBuilder key = new StringBuilder();
+
+	SegmentDigest(long segment_id, String layout_signature) {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		key.append(segment_id).append('|').append(layout_signature)
+				.append('|');
+	}
+
+	/**
+	 * 加入一个数据值，null 表示没有数据
+	 */
+	void addValue(String value) {
+		if (value == null) {
+			digest.update((byte) 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		digest.update((byte) 1);
+		addLength(bytes.length);
+		digest.update(bytes);
+	}
+
+	/**
+	 * 开始 repeat 的一个元素
+	 */
+	void beginItem() {
+		digest.update((byte) 2);
+	}
+
+	/**
+	 * repeat 结束
+	 */
+	void endRepeat() {
+		digest.update((byte) 3);
+	}
+
+	private void addLength(int length) {
+		digest.update((byte) (length >>> 24));
+		digest.update((byte) (length >>> 16));
+		digest.update((byte) (length >>> 8));
+		digest.update((byte) length);
+	}
+
+	/**
+	 * 缓存中使用的键
+	 */
+	String toKey() {
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16))
+					.append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,190 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.ExceptionConverter;
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 段，两个 pagebreak(或 page)之间的节点，每段从新的一页开始
+ *
+ * 不包含数据的段是静态段，第一次生成 PDF 时在一个单独的文档中排版，
+ * 保存排版好的 PDF，之后排版参数相同的文档直接将这些页面作为
+ * Form XObject 引用，页面装饰(水印、页码等)仍然由文档自己添加。
+ * 并行生成时每一段都在单独的文档中排版，再按顺序放入最终文档。
+ * 设置了 SegmentCache 时，包含数据的段按用到的数据计算指纹并缓存。
+ */
+class SegmentNode extends TemplateNode
+{
+	// 最多保存的不同排版参数的结果
+	static final int MAX_LAYOUTS = 16;
+
+	private static final AtomicLong next_id = new AtomicLong();
+
+	// 段在所有编译过的模板中唯一的编号，用于段缓存的键
+	final long id = next_id.incrementAndGet();
+	final List<TemplateNode> children;
+	final boolean is_static;
+	private final ConcurrentHashMap<String, SegmentPages> layouts =
+			new ConcurrentHashMap<String, SegmentPages>();
+
+	SegmentNode(List<TemplateNode> children, boolean is_static) {
+		this.children = Collections.unmodifiableList(
+				new ArrayList<TemplateNode>(children));
+		this.is_static = is_static;
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		if (!(context.text_doc instanceof PDFDoc)) {
+			renderChildren(context);
+			return;
+		}
+		if (!is_static) {
+			if (context.segment_cache == null) {
+				renderChildren(context);
+			} else {
+				renderCached((PDFDoc) context.text_doc, context);
+			}
+			return;
+		}
+		if (!context.page_cache) {
+			renderChildren(context);
+			return;
+		}
+		PDFDoc pdf_doc = (PDFDoc) context.text_doc;
+		SegmentPages pages = getCachedPages(pdf_doc, context);
+		if (pages == null) {
+			pages = layout(pdf_doc, DataSource.of(null, null));
+			if (pages == null) {
+				renderChildren(context);
+				return;
+			}
+			putCachedPages(pdf_doc, context, pages);
+		}
+		pages.addTo(pdf_doc);
+	}
+
+	void renderChildren(RenderContext context) throws IOException {
+		for (TemplateNode node : children) {
+			node.render(context);
+		}
+	}
+
+	/**
+	 * 包含数据的段，数据没有变化时使用段缓存中的页面
+	 */
+	private void renderCached(PDFDoc pdf_doc, RenderContext context)
+			throws IOException {
+		String key = fingerprint(pdf_doc, context);
+		SegmentPages pages = context.segment_cache.get(key);
+		if (pages == null) {
+			pages = layout(pdf_doc, context.data_source);
+			if (pages == null) {
+				renderChildren(context);
+				return;
+			}
+			context.segment_cache.put(key, pages);
+		}
+		pages.addTo(pdf_doc);
+	}
+
+	/**
+	 * 计算段指纹：段编号、排版参数和段中用到的所有数据
+	 * @param layout_doc 提供排版参数的文档
+	 * @return 段缓存中的键
+	 */
+	String fingerprint(PDFDoc layout_doc, RenderContext context) {
+		SegmentDigest digest = new SegmentDigest(id,
+				layout_doc.getLayoutSignature());
+		context.report_missing = false;
+		try {
+			for (TemplateNode node : children) {
+				node.fingerprint(context, digest);
+			}
+		} finally {
+			context.report_missing = true;
+		}
+		return digest.toKey();
+	}
+
+	/**
+	 * 查找缓存的排版结果，只用于静态段
+	 * @param layout_doc 提供排版参数的文档
+	 * @return 没有缓存时返回 null
+	 */
+	SegmentPages getCachedPages(PDFDoc layout_doc, RenderContext context) {
+		SegmentPages pages = layouts.get(layout_doc.getLayoutSignature());
+		if (pages != null) {
+			context.cache_stats.hit(pages.pages, pages.layout_nanos);
+		}
+		return pages;
+	}
+
+	void putCachedPages(PDFDoc layout_doc, RenderContext context,
+			SegmentPages pages) {
+		if (layouts.size() < MAX_LAYOUTS) {
+			layouts.putIfAbsent(layout_doc.getLayoutSignature(), pages);
+		}
+		context.cache_stats.miss(pages.pages, pages.layout_nanos);
+	}
+
+	/**
+	 * 在单独的文档中排版，可以在其它线程中调用
+	 * @param layout_doc 提供排版参数的文档
+	 * @param data_source 数据源
+	 * @return iText 排版失败时返回 null
+	 */
+	SegmentPages layout(PDFDoc layout_doc, DataSource data_source) {
+		long start = System.nanoTime();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			PDFDoc segment_doc = layout_doc.createLayoutCopy(out);
+			if (!segment_doc.open()) {
+				return null;
+			}
+			renderChildren(new RenderContext(segment_doc, data_source));
+			if (segment_doc.isEmpty()) {
+				// 例如 repeat 的数组为空，没有输出任何内容
+				try {
+					segment_doc.close();
+				} catch (RuntimeException ex) {
+					// iText 关闭没有页面的文档时报告 "The document has no pages"，
+					// 这时文档已经关闭
+				}
+				return new SegmentPages(null, 0, System.nanoTime() - start);
+			}
+			segment_doc.close();
+
+			byte[] pdf = out.toByteArray();
+			PdfReader reader = new PdfReader(pdf);
+			int pages = reader.getNumberOfPages();
+			reader.close();
+			return new SegmentPages(pdf, pages, System.nanoTime() - start);
+		} catch (IOException | ExceptionConverter ex) {
+			// iText 排版失败时在文档中直接排版，其它异常是程序错误，直接抛出
+			System.err.println("Layout segment failed, "
+					+ "render in the document instead:");
+			ex.printStackTrace();
+			return null;
+		}
+	}
+
+	@Override
+	void collectPaths(List<PathTrie> scopes) {
+		for (TemplateNode node : children) {
+			node.collectPaths(scopes);
+		}
+	}
+
+	@Override
+	boolean isStatic() {
+		return is_static;
+	}
+}
@@ -0,0 +1,26 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+
+/**
+ * 一段排版好的页面
+ */
+class SegmentPages
+{
+	// 排版好的 PDF，没有内容时为 null
+	final byte[] pdf;
+	final int pages;
+	final long layout_nanos;
+
+	SegmentPages(byte[] pdf, int pages, long layout_nanos) {
+		this.pdf = pdf;
+		this.pages = pages;
+		this.layout_nanos = layout_nanos;
+	}
+
+	void addTo(PDFDoc pdf_doc) throws IOException {
+		if (pdf != null) {
+			pdf_doc.addPages(pdf);
+		}
+	}
+}
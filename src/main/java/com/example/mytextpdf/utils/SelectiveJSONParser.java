@@ -0,0 +1,388 @@
+package com.example.mytextpdf.utils;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 按需解析的 JSON 解析器
+ *
+ * 直接读取 UTF-8 字节流，只为 PathTrie 中的路径创建 JSONObject、
+ * JSONArray 等对象，其它的值只扫描到结束位置后跳过。
+ * 生成的对象类型与 json-simple 相同：JSONObject、JSONArray、String、
+ * Long、Double、Boolean 和 null。
+ */
+class SelectiveJSONParser
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final InputStream in_stream;
+	private final byte[] buffer = new byte[8192];
+	private int pos = 0;
+	private int limit = 0;
+	private long offset = 0;
+
+	private byte[] string_bytes = new byte[256];
+
+	long skipped_bytes = 0;
+	long bound_bytes = 0;
+
+	SelectiveJSONParser(InputStream in_stream) {
+		this.in_stream = in_stream;
+	}
+
+	/**
+	 * 解析数据流中的 JSON 对象
+	 * @param trie 需要的路径
+	 * @return
+	 * @throws IOException
+	 */
+	JSONObject parse(PathTrie trie) throws IOException {
+		if (skipSpace() != '{') {
+			throw error("JSON source must be a object");
+		}
+		Object value = parseValue(trie);
+		if (skipSpace() != -1) {
+			throw error("Unexpected character");
+		}
+		return (JSONObject) value;
+	}
+
+	/**
+	 * 已读取的字节数
+	 */
+	long getTotalBytes() {
+		return offset + pos;
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " at position "
+				+ getTotalBytes() + ".");
+	}
+
+	private int peek() throws IOException {
+		if (pos == limit) {
+			offset += limit;
+			pos = 0;
+			limit = in_stream.read(buffer, 0, buffer.length);
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[pos] & 0xff;
+	}
+
+	private int read() throws IOException {
+		int ch = peek();
+		if (ch < 0) {
+			throw error("Unexpected end of JSON");
+		}
+		pos++;
+		return ch;
+	}
+
+	private int skipSpace() throws IOException {
+		int ch;
+		while ((ch = peek()) == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+			pos++;
+		}
+		return ch;
+	}
+
+	private void expect(int expected) throws IOException {
+		if (skipSpace() != expected) {
+			throw error("Expect '" + (char) expected + "'");
+		}
+		pos++;
+	}
+
+	private Object parseValue(PathTrie trie) throws IOException {
+		int ch = skipSpace();
+		long start = getTotalBytes();
+
+		if (trie == null) {
+			skipValue();
+			skipped_bytes += getTotalBytes() - start;
+			return null;
+		}
+		if (trie.isAll() || (ch != '{' && ch != '[')) {
+			Object value = readValue();
+			bound_bytes += getTotalBytes() - start;
+			return value;
+		}
+		if (ch == '{') {
+			pos++;
+			JSONObject object = new JSONObject();
+			if (skipSpace() == '}') {
+				pos++;
+				return object;
+			}
+			while (true) {
+				expect('"');
+				String key = readString();
+				expect(':');
+				PathTrie child = trie.key(key);
+				Object value = parseValue(child);
+				if (child != null) {
+					put(object, key, value);
+				}
+				ch = skipSpace();
+				pos++;
+				if (ch == '}') {
+					return object;
+				}
+				if (ch != ',') {
+					throw error("Expect ',' or '}'");
+				}
+			}
+		}
+		pos++;
+		JSONArray array = new JSONArray();
+		PathTrie elements = trie.elements();
+		if (skipSpace() == ']') {
+			pos++;
+			return array;
+		}
+		while (true) {
+			Object value = parseValue(elements);
+			// 不需要的元素也保留位置，下标不变
+			add(array, value);
+			ch = skipSpace();
+			pos++;
+			if (ch == ']') {
+				return array;
+			}
+			if (ch != ',') {
+				throw error("Expect ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * 完整读取一个值
+	 */
+	private Object readValue() throws IOException {
+		int ch = skipSpace();
+		switch (ch) {
+		case '{': {
+			pos++;
+			JSONObject object = new JSONObject();
+			if (skipSpace() == '}') {
+				pos++;
+				return object;
+			}
+			while (true) {
+				expect('"');
+				String key = readString();
+				expect(':');
+				put(object, key, readValue());
+				ch = skipSpace();
+				pos++;
+				if (ch == '}') {
+					return object;
+				}
+				if (ch != ',') {
+					throw error("Expect ',' or '}'");
+				}
+			}
+		}
+		case '[': {
+			pos++;
+			JSONArray array = new JSONArray();
+			if (skipSpace() == ']') {
+				pos++;
+				return array;
+			}
+			while (true) {
+				add(array, readValue());
+				ch = skipSpace();
+				pos++;
+				if (ch == ']') {
+					return array;
+				}
+				if (ch != ',') {
+					throw error("Expect ',' or ']'");
+				}
+			}
+		}
+		case '"':
+			pos++;
+			return readString();
+		case 't':
+			expectWord("true");
+			return Boolean.TRUE;
+		case 'f':
+			expectWord("false");
+			return Boolean.FALSE;
+		case 'n':
+			expectWord("null");
+			return null;
+		default:
+			return readNumber();
+		}
+	}
+
+	// json-simple 的 JSONObject 和 JSONArray 没有泛型参数
+	@SuppressWarnings("unchecked")
+	private static void put(JSONObject object, String key, Object value) {
+		object.put(key, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void add(JSONArray array, Object value) {
+		array.add(value);
+	}
+
+	/**
+	 * 跳过一个值，不创建任何对象
+	 */
+	private void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			int ch = skipSpace();
+			if (ch < 0) {
+				throw error("Unexpected end of JSON");
+			}
+			pos++;
+			switch (ch) {
+			case '{':
+			case '[':
+				depth++;
+				break;
+			case '}':
+			case ']':
+				if (--depth < 0) {
+					throw error("Unexpected character");
+				}
+				break;
+			case '"':
+				skipString();
+				break;
+			case ',':
+			case ':':
+				if (depth == 0) {
+					throw error("Unexpected character");
+				}
+				break;
+			default:
+				// 数字、true、false、null
+				while ((ch = peek()) >= 0 && ch != ',' && ch != ':'
+						&& ch != '}' && ch != ']' && ch != ' '
+						&& ch != '\t' && ch != '\n' && ch != '\r') {
+					pos++;
+				}
+			}
+		} while (depth > 0);
+	}
+
+	private void skipString() throws IOException {
+		while (true) {
+			int ch = read();
+			if (ch == '"') {
+				return;
+			}
+			if (ch == '\\') {
+				read();
+			}
+		}
+	}
+
+	private void expectWord(String word) throws IOException {
+		for (int i = 0; i < word.length(); i++) {
+			if (read() != word.charAt(i)) {
+				throw error("Unexpected character");
+			}
+		}
+	}
+
+	private Object readNumber() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		boolean is_float = false;
+		int ch;
+		while ((ch = peek()) >= 0 && (ch >= '0' && ch <= '9' || ch == '-'
+				|| ch == '+' || ch == '.' || ch == 'e' || ch == 'E')) {
+			if (ch == '.' || ch == 'e' || ch == 'E') {
+				is_float = true;
+			}
+			builder.append((char) ch);
+			pos++;
+		}
+		if (builder.length() == 0) {
+			throw error("Unexpected character");
+		}
+		try {
+			if (!is_float) {
+				try {
+					return Long.valueOf(builder.toString());
+				} catch (NumberFormatException ex) {
+					// 超出 long 范围
+				}
+			}
+			return Double.valueOf(builder.toString());
+		} catch (NumberFormatException ex) {
+			throw error("Invalid number '" + builder + "'");
+		}
+	}
+
+	/**
+	 * 读取字符串，开始的引号已经读过
+	 */
+	private String readString() throws IOException {
+		int length = 0;
+		StringBuilder builder = null;
+
+		while (true) {
+			int ch = read();
+			if (ch == '"') {
+				break;
+			}
+			if (ch != '\\') {
+				if (length == string_bytes.length) {
+					string_bytes = Arrays.copyOf(string_bytes,
+							length * 2);
+				}
+				string_bytes[length++] = (byte) ch;
+				continue;
+			}
+			// 转义字符，先将已有的字节解码
+			if (builder == null) {
+				builder = new StringBuilder();
+			}
+			builder.append(new String(string_bytes, 0, length, UTF8));
+			length = 0;
+
+			ch = read();
+			switch (ch) {
+			case 'b': builder.append('\b'); break;
+			case 'f': builder.append('\f'); break;
+			case 'n': builder.append('\n'); break;
+			case 'r': builder.append('\r'); break;
+			case 't': builder.append('\t'); break;
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(read(), 16);
+					if (digit < 0) {
+						throw error("Invalid unicode escape");
+					}
+					code = code * 16 + digit;
+				}
+				builder.append((char) code);
+				break;
+			default:
+				builder.append((char) ch);
+			}
+		}
+		String tail = new String(string_bytes, 0, length, UTF8);
+		if (builder == null) {
+			return tail;
+		}
+		return builder.append(tail).toString();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表格
+ */
+class TableNode extends TemplateNode
+{
+	final Map<String, String> attrs;
+	// CellNode 或包含 CellNode 的 RepeatNode
+	final List<TemplateNode> cells;
+
+	TableNode(Map<String, String> attrs, List<TemplateNode> cells) {
+		this.attrs = Collections.unmodifiableMap(
+				new HashMap<String, String>(attrs));
+		this.cells = Collections.unmodifiableList(
+				new ArrayList<TemplateNode>(cells));
+	}
+
+	@Override
+	void render(RenderContext context) throws IOException {
+		context.text_doc.beginTable(attrs);
+		for (TemplateNode cell : cells) {
+			cell.render(context);
+		}
+		context.text_doc.endTable();
+	}
+
+	@Override
+	void collectPaths(List<PathTrie> scopes) {
+		for (TemplateNode cell : cells) {
+			cell.collectPaths(scopes);
+		}
+	}
+
+	@Override
+	boolean isStatic() {
+		for (TemplateNode cell : cells) {
+			if (!cell.isStatic()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+		for (TemplateNode cell : cells) {
+			cell.fingerprint(context, digest);
+		}
+	}
+}
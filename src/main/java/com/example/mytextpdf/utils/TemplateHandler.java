@@ -0,0 +1,454 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Rectangle;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解析 XML 模板，生成 CompiledTemplate 的节点树
+ */
+class TemplateHandler extends DefaultHandler
+{
+	public static final String[] BLOCK_ELEMENTS = {
+			"title", "chapter", "section", "para",
+			"pagebreak", "table"
+	};
+
+	private List<TemplateNode> nodes;
+	private List<ChunkNode> chunk_list;
+	private ArrayDeque<AttrScope> scope_stack;
+	private StringBuilder contents_builder;
+	private boolean is_open = false;
+	private boolean is_closed = false;
+
+	// 当前正在解析的表格
+	private Map<String, String> table_attrs = null;
+	private List<TemplateNode> table_cells = null;
+	private AttrScope table_cell = null;
+	private String cell_prefix = "";
+
+	// 当前正在解析的 value 元素
+	private ValuePath value_path = null;
+	private Map<String, String> value_attrs = null;
+
+	// 外层的 repeat 元素
+	private ArrayDeque<RepeatFrame> repeat_stack = new ArrayDeque<RepeatFrame>();
+
+	private static class RepeatFrame
+	{
+		final ValuePath path;
+		final List<TemplateNode> parent;
+		final boolean in_table;
+
+		RepeatFrame(ValuePath path, List<TemplateNode> parent,
+				boolean in_table) {
+			this.path = path;
+			this.parent = parent;
+			this.in_table = in_table;
+		}
+	}
+
+	/**
+	 * 元素的属性
+	 *
+	 * 子元素继承父元素的属性，通过 parent 链接共享，不复制。
+	 * 只有需要生成 ChunkNode 时才合并为 Map，合并结果也只生成一次。
+	 */
+	private static class AttrScope
+	{
+		private static final String[] NONE = new String[0];
+
+		final AttrScope parent;
+		final String[] names;
+		final String[] values;
+		boolean is_value = false;
+		private Map<String, String> map = null;
+
+		AttrScope(AttrScope parent, Attributes attrs) {
+			this.parent = parent;
+			int length = attrs.getLength();
+			this.names = length == 0 ? NONE : new String[length];
+			this.values = length == 0 ? NONE : new String[length];
+			for (int i = 0; i < length; i++) {
+				names[i] = attrs.getQName(i);
+				values[i] = attrs.getValue(i);
+			}
+		}
+
+		/**
+		 * 合并父元素和自己的属性，自己的属性优先
+		 */
+		Map<String, String> toMap() {
+			if (map == null && names.length == 0) {
+				// 没有自己的属性，与父元素相同
+				map = parent == null ?
+						Collections.<String, String>emptyMap() : parent.toMap();
+			}
+			if (map == null) {
+				Map<String, String> result = new HashMap<String, String>();
+				if (parent != null) {
+					for (Map.Entry<String, String> entry
+							: parent.toMap().entrySet()) {
+						result.put(entry.getKey(), entry.getValue());
+					}
+				}
+				for (int i = 0; i < names.length; i++) {
+					result.put(names[i], values[i]);
+				}
+				map = Collections.unmodifiableMap(result);
+			}
+			return map;
+		}
+	}
+
+	public TemplateHandler() {
+		nodes = new ArrayList<TemplateNode>();
+		chunk_list = new ArrayList<ChunkNode>();
+		scope_stack = new ArrayDeque<AttrScope>();
+		contents_builder = new StringBuilder();
+	}
+
+	CompiledTemplate getTemplate() throws SAXException {
+		if (!is_closed) {
+			throw new SAXException("'textpdf' root element not closed.");
+		}
+		return new CompiledTemplate(nodes);
+	}
+
+	// 页面大小常数定义
+	private Object[][] page_size_map = {
+			{ "a0", PageSize.A0 }, { "a1", PageSize.A1 },
+			{ "a2", PageSize.A2 }, { "a3", PageSize.A3 },
+			{ "a4", PageSize.A4 }, { "a5", PageSize.A5 },
+			{ "a6", PageSize.A6 }, { "a7", PageSize.A7 },
+			{ "a8", PageSize.A8 }, { "a9", PageSize.A9 },
+			{ "a10", PageSize.A10 },
+
+			{ "b0", PageSize.B0 }, { "b1", PageSize.B1 },
+			{ "b2", PageSize.B2 }, { "b3", PageSize.B3 },
+			{ "b4", PageSize.B4 }, { "b5", PageSize.B5 },
+			{ "b6", PageSize.B6 }, { "b7", PageSize.B7 },
+			{ "b8", PageSize.B8 }, { "b9", PageSize.B9 },
+			{ "b10", PageSize.B10 },
+	};
+
+	private PageNode setupPage(Attributes attrs) {
+		Rectangle page_size = null;
+		int[] margin = null;
+
+		// 页面大小
+		String value = attrs.getValue("size");
+		if (value != null) {
+			for (Object[] item : page_size_map) {
+				if (value.equalsIgnoreCase((String) item[0])) {
+					page_size = (Rectangle) item[1];
+					break;
+				}
+			}
+		}
+
+		// 页面边距
+		value = attrs.getValue("margin");
+		if (value != null) {
+			String[] array = value.split(",");
+			if (array.length < 4) {
+				System.err.println("Page margin format error.");
+			} else {
+				try {
+					margin = new int[] {
+							Integer.parseInt(array[0].trim()),
+							Integer.parseInt(array[1].trim()),
+							Integer.parseInt(array[2].trim()),
+							Integer.parseInt(array[3].trim())
+					};
+				} catch (Exception ex) {
+					System.err.println("Page margin format error.");
+				}
+			}
+		}
+		return new PageNode(page_size, margin);
+	}
+
+	/**
+	 * 用当前已收集的字符生成一个文本片段节点
+	 */
+	private ChunkNode createChunkNode(AttrScope scope, String contents) {
+		ChunkNode node = new ChunkNode(scope.toMap(), contents,
+				scope.is_value, value_path, value_attrs);
+		value_path = null;
+		value_attrs = null;
+		return node;
+	}
+
+	private boolean hasContents() {
+		return contents_builder.length() > 0 || value_path != null;
+	}
+
+	private static ValuePath compilePath(String expression)
+			throws SAXException {
+		try {
+			return ValuePath.compile(expression);
+		} catch (IllegalArgumentException ex) {
+			throw new SAXException(ex.getMessage());
+		}
+	}
+
+	/**
+	 * repeat 开始，之后的节点收集到新的列表中
+	 */
+	private void startRepeat(Attributes attrs) throws SAXException {
+		String path = attrs.getValue("path");
+		if (path == null) {
+			throw new SAXException("Repeat element missing 'path' attribute.");
+		}
+		if (table_attrs != null) {
+			if (table_cell != null) {
+				throw new SAXException("repeat is not allowed in cell");
+			}
+			repeat_stack.push(new RepeatFrame(compilePath(path),
+					table_cells, true));
+			table_cells = new ArrayList<TemplateNode>();
+		} else {
+			repeat_stack.push(new RepeatFrame(compilePath(path),
+					nodes, false));
+			nodes = new ArrayList<TemplateNode>();
+		}
+	}
+
+	private void endRepeat() {
+		RepeatFrame frame = repeat_stack.pop();
+		if (frame.in_table) {
+			List<TemplateNode> children = table_cells;
+			table_cells = frame.parent;
+			if (children.size() > 0) {
+				table_cells.add(new RepeatNode(frame.path, children));
+			}
+		} else {
+			List<TemplateNode> children = nodes;
+			nodes = frame.parent;
+			if (children.size() > 0) {
+				nodes.add(new RepeatNode(frame.path, children));
+			}
+		}
+	}
+
+	/**
+	 * 单元格中的 value 元素，之前的文本作为前缀
+	 */
+	private void startCellValue(Attributes attrs) throws SAXException {
+		String id = attrs.getValue("id");
+		if (id == null) {
+			System.err.println("Value element missing 'id' attribute.");
+			return;
+		}
+		value_path = compilePath(id);
+		value_attrs = new HashMap<String, String>(table_cell.toMap());
+		for (int i = 0; i < attrs.getLength(); i++) {
+			value_attrs.put(attrs.getQName(i), attrs.getValue(i));
+		}
+		cell_prefix = contents_builder.toString();
+		contents_builder.setLength(0);
+	}
+
+	/**
+	 * 元素开始时回调
+	 */
+	@Override
+	public void startElement(String namespaceURI,
+			String localName, String qName, Attributes attrs)
+					throws SAXException {
+		if (qName.equalsIgnoreCase("textpdf")) {
+			if (is_open) {
+				throw new SAXException("'textpdf' must be root element.");
+			}
+			is_open = true;
+			return;
+		}
+
+		if (!is_open) {
+			throw new SAXException("Document unopen yet. "
+					+ "check your xml root element is 'textpdf'");
+		}
+
+		if (qName.equalsIgnoreCase("repeat")) {
+			startRepeat(attrs);
+			return;
+		}
+
+		// Block 元素不可嵌套
+		for (String label : BLOCK_ELEMENTS) {
+			if (label.equalsIgnoreCase(qName)) {
+				chunk_list.clear();
+				break;
+			}
+		}
+
+		if (qName.equalsIgnoreCase("table")) {
+			table_attrs = new HashMap<String, String>();
+			for (int i = 0; i < attrs.getLength(); i++) {
+				table_attrs.put(attrs.getQName(i), attrs.getValue(i));
+			}
+			table_cells = new ArrayList<TemplateNode>();
+			return;
+		}
+		if (table_attrs != null) {
+			if (table_cell != null && qName.equalsIgnoreCase("value")) {
+				startCellValue(attrs);
+				return;
+			}
+			if (!qName.equalsIgnoreCase("cell")) {
+				throw new SAXException(qName + " is not child of table");
+			}
+			table_cell = new AttrScope(null, attrs);
+			contents_builder.setLength(0);
+			cell_prefix = "";
+			return;
+		}
+
+		if (qName.equalsIgnoreCase("page")) {
+			nodes.add(setupPage(attrs));
+			return;
+		}
+		if (qName.equalsIgnoreCase("hrule")) {
+			nodes.add(new HRuleNode(attrs));
+			return;
+		}
+		if (qName.equalsIgnoreCase("img")) {
+			nodes.add(new ImageNode(attrs));
+			return;
+		}
+
+		AttrScope parent = scope_stack.peek();
+		if (parent != null && hasContents()) {
+			chunk_list.add(createChunkNode(parent,
+					contents_builder.toString()));
+			contents_builder.setLength(0);
+		}
+
+		AttrScope scope = new AttrScope(parent, attrs);
+
+		if (qName.equalsIgnoreCase("value")) {
+			scope.is_value = true;
+
+			String id = attrs.getValue("id");
+			if (id == null) {
+				System.err.println("Value element missing 'id' attribute.");
+			} else {
+				// 数据在生成文档时才填入，找到数据时使用 value_attrs
+				value_path = compilePath(id);
+				value_attrs = new HashMap<String, String>(scope.toMap());
+				if (attrs.getValue("font-style") == null) {
+					value_attrs.put("font-style", "bold,underline");
+				}
+			}
+		} else if (qName.equalsIgnoreCase("hspace")) {
+			String value = attrs.getValue("size");
+			if (value == null || value.length() == 0) {
+				System.err.println("hspace need a size attribute.");
+			} else {
+				try {
+					int size = Integer.parseInt(value);
+					for (int i = 0; i < size; i++) {
+						contents_builder.append(' ');
+					}
+				} catch (Exception ex) {
+					System.err.println("size attribute need a integer value");
+				}
+			}
+		}
+		scope_stack.push(scope);
+	}
+
+	/**
+	 * 标签字符串处理
+	 */
+	@Override
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		Util.appendTemplateText(contents_builder, ch, start, length);
+	}
+
+	/**
+	 * 元素结束时回调
+	 */
+	@Override
+	public void endElement(String namespaceURI,
+			String localName, String qName) throws SAXException {
+		if (qName.equalsIgnoreCase("textpdf")){
+			is_closed = true;
+			return;
+		}
+		if (qName.equalsIgnoreCase("repeat")) {
+			endRepeat();
+			return;
+		}
+		if (table_attrs != null && qName.equalsIgnoreCase("value")) {
+			return;
+		}
+		if (qName.equalsIgnoreCase("pagebreak")) {
+			nodes.add(new PageBreakNode());
+			return;
+		}
+		if (qName.equalsIgnoreCase("break")) {
+			contents_builder.append("\n");
+			return;
+		}
+
+		if (qName.equalsIgnoreCase("cell")) {
+			table_cells.add(new CellNode(new ChunkNode(table_cell.toMap(),
+					cell_prefix, contents_builder.toString(), false,
+					value_path, value_attrs)));
+			value_path = null;
+			value_attrs = null;
+			table_cell = null;
+		}
+		if (qName.equalsIgnoreCase("table")) {
+			if (table_cells.size() > 0) {
+				nodes.add(new TableNode(table_attrs, table_cells));
+			}
+			contents_builder.setLength(0);
+			table_attrs = null;
+			table_cells = null;
+			table_cell = null;
+			return;
+		}
+
+		AttrScope scope = scope_stack.poll();
+		if (scope == null) {
+			return;
+		}
+		if (hasContents() ||
+				qName.equalsIgnoreCase("value") ||
+				qName.equalsIgnoreCase("hspace")) {
+			chunk_list.add(createChunkNode(scope,
+					contents_builder.toString()));
+			contents_builder.setLength(0);
+		}
+
+		for (String label : BLOCK_ELEMENTS) {
+			// 空段落，需要增加一个空 TextChunk 对象去模拟空段落
+			if (chunk_list.size() == 0 && label.equalsIgnoreCase("para")) {
+				chunk_list.add(new ChunkNode(scope.toMap(), " ",
+						scope.is_value, null, null));
+			}
+
+			if (chunk_list.size() > 0) {
+				if (label.equalsIgnoreCase(qName)) {
+					nodes.add(new BlockNode(qName, chunk_list));
+					chunk_list.clear();
+					break;
+				}
+			}
+		}
+	}
+
+}
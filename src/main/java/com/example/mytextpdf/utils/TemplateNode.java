@@ -0,0 +1,32 @@
+package com.example.mytextpdf.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 模板节点
+ */
+abstract class TemplateNode
+{
+	abstract void render(RenderContext context) throws IOException;
+
+	/**
+	 * 将用到的数据路径添加到各个查找范围中
+	 * @param scopes 由外向内的查找范围
+	 */
+	void collectPaths(List<PathTrie> scopes) {
+	}
+
+	/**
+	 * 输出是否与数据无关
+	 */
+	boolean isStatic() {
+		return false;
+	}
+
+	/**
+	 * 将输出用到的数据加入段指纹
+	 */
+	void fingerprint(RenderContext context, SegmentDigest digest) {
+	}
+}
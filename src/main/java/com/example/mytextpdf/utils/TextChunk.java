@@ -33,11 +33,21 @@ public class TextChunk
 	private String contents;
 	private Map<String, String> attrs;
 	private boolean is_value;
+	// 解析好的样式，属性改变后重新解析
+	private TextStyle style = null;
 
 	public TextChunk() {
 		attrs = new HashMap<String, String>();
 	}
 
+	/**
+	 * 使用共享的样式，属性不可修改
+	 */
+	TextChunk(TextStyle style) {
+		this.attrs = style.attrs;
+		this.style = style;
+	}
+
 	public String getContents() {
 		return contents;
 	}
@@ -50,24 +60,37 @@ public class TextChunk
 		return attrs;
 	}
 
+	/**
+	 * 解析好的样式，属性相同的片段共享同一个对象
+	 */
+	TextStyle getStyle() {
+		if (style == null) {
+			style = TextStyle.of(attrs);
+		}
+		return style;
+	}
+
 	public void addAttrs(Attributes attrs) {
 		for (int i = 0; i < attrs.getLength(); i++) {
 			String name = attrs.getQName(i);
 			String value = attrs.getValue(i);
 			this.attrs.put(name, value);
 		}
+		style = null;
 	}
 
 	public void addAttrs(Map<String, String> attrs) {
 		Set<String> keys = attrs.keySet();
 		for (String key : keys) {
-			this.attrs.put(new String(key), new String(attrs.get(key)));
+			this.attrs.put(key, attrs.get(key));
 		}
+		style = null;
 	}
 
 	public void addAttr(String key, String value) {
 		if (key != null && value != null) {
 			attrs.put(key, value);
+			style = null;
 		}
 	}
 
@@ -82,13 +105,13 @@ public class TextChunk
 	public TextChunk clone() {
 		TextChunk chunk = new TextChunk();
 
-		Set<String> keys = this.attrs.keySet();
-		for (String key : keys) {
-			chunk.attrs.put(new String(key),
-					new String(this.attrs.get(key)));
+		// String 不可变，不需要复制
+		for (Map.Entry<String, String> entry : this.attrs.entrySet()) {
+			chunk.attrs.put(entry.getKey(), entry.getValue());
 		}
-		chunk.contents = new String(this.contents);
+		chunk.contents = this.contents;
 		chunk.is_value = this.is_value;
+		chunk.style = this.style;
 		return chunk;
 	}
 
@@ -29,6 +29,7 @@ import org.xml.sax.Attributes;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 输出文档抽象类
@@ -42,6 +43,10 @@ public abstract class TextDoc
 	protected int page_margin_top = 50;
 	protected int page_margin_bottom = 56;
 	protected String encoding = "UTF-8";
+	// 生成时使用的模板名称，用于 JFR 事件
+	String template_name = null;
+
+	private TextTable streaming_table = null;
 
 	public TextDoc(OutputStream out_stream) {
 		this.out_stream = out_stream;
@@ -86,4 +91,43 @@ public abstract class TextDoc
 	abstract public void addHRule(Attributes attrs);
 	abstract public void addImage(Attributes attrs);
 	abstract public void writeTable(TextTable table) throws IOException;
+
+	/**
+	 * 开始输出一个表格，之后通过 addTableCell() 逐个添加单元格，
+	 * 最后调用 endTable() 结束
+	 *
+	 * 默认实现将单元格收集到 TextTable 中，在 endTable() 时调用
+	 * writeTable()，子类可以覆盖这几个方法边添加边输出。
+	 * @param attrs 表格属性
+	 * @throws IOException
+	 */
+	public void beginTable(Map<String, String> attrs) throws IOException {
+		streaming_table = new TextTable();
+		streaming_table.addAttrs(attrs);
+	}
+
+	/**
+	 * 向当前表格添加一个单元格
+	 * @param cell
+	 * @throws IOException
+	 */
+	public void addTableCell(TextChunk cell) throws IOException {
+		if (streaming_table == null) {
+			throw new IOException("Table not started.");
+		}
+		streaming_table.addCell(cell);
+	}
+
+	/**
+	 * 结束当前表格
+	 * @throws IOException
+	 */
+	public void endTable() throws IOException {
+		if (streaming_table == null) {
+			throw new IOException("Table not started.");
+		}
+		TextTable table = streaming_table;
+		streaming_table = null;
+		writeTable(table);
+	}
 }
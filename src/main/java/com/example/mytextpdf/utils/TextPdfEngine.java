@@ -0,0 +1,541 @@
+package com.example.mytextpdf.utils;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Rectangle;
+
+/**
+ * 可以被多个线程共享的文档生成引擎
+ *
+ * TextParser 每次使用都要重新设置参数，PDFDoc 的块默认属性也只属于一个文档。
+ * TextPdfEngine 由 Builder 创建，创建后所有参数(页面、块默认属性、
+ * 页面装饰、HTML 选项)都不再改变，每次生成时按这些参数创建新的文档对象，
+ * 生成过程中不需要加锁，适合在 Spring 中作为单例使用：
+ *
+ * <pre>
+ * TextPdfEngine engine = TextPdfEngine.builder()
+ *         .setPageNum(true)
+ *         .setBlockDefaultFontSize(PDFDoc.BLOCK_PARA, 11)
+ *         .build();
+ * CompiledTemplate template = engine.compile(xml_stream);
+ * engine.render(template, json_object, out_stream);
+ * </pre>
+ */
+public final class TextPdfEngine
+{
+	private final Rectangle page_size;
+	private final int page_margin_left;
+	private final int page_margin_right;
+	private final int page_margin_top;
+	private final int page_margin_bottom;
+	private final List<PDFBlockDefault> block_defaults;
+	private final String encoding;
+	private final PDFOutputProfile output_profile;
+	private final ForkJoinPool deflate_pool;
+	private final boolean static_page_cache;
+
+	private final boolean page_num;
+	private final String header_text;
+	private final String marker_text;
+	private final float marker_opacity;
+	private final int marker_angle;
+	private final int marker_font_size;
+	private final int marker_style;
+
+	private final List<String> css_paths;
+	private final List<String> js_paths;
+	private final String html_declare;
+	private final String html_extra;
+	private final int html_type;
+
+	private TextPdfEngine(Builder builder) {
+		this.page_size = new Rectangle(builder.page_size);
+		this.page_margin_left = builder.page_margin_left;
+		this.page_margin_right = builder.page_margin_right;
+		this.page_margin_top = builder.page_margin_top;
+		this.page_margin_bottom = builder.page_margin_bottom;
+		this.block_defaults = Collections.unmodifiableList(
+				copyBlockDefaults(builder.block_defaults));
+		this.encoding = builder.encoding;
+		this.output_profile = builder.output_profile;
+		this.deflate_pool = builder.deflate_pool;
+		this.static_page_cache = builder.static_page_cache;
+
+		this.page_num = builder.page_num;
+		this.header_text = builder.header_text;
+		this.marker_text = builder.marker_text;
+		this.marker_opacity = builder.marker_opacity;
+		this.marker_angle = builder.marker_angle;
+		this.marker_font_size = builder.marker_font_size;
+		this.marker_style = builder.marker_style;
+
+		this.css_paths = copyList(builder.css_paths);
+		this.js_paths = copyList(builder.js_paths);
+		this.html_declare = builder.html_declare;
+		this.html_extra = builder.html_extra;
+		this.html_type = builder.html_type;
+	}
+
+	private static List<PDFBlockDefault> copyBlockDefaults(
+			List<PDFBlockDefault> blocks) {
+		List<PDFBlockDefault> copy = new ArrayList<PDFBlockDefault>();
+		for (PDFBlockDefault block : blocks) {
+			copy.add(new PDFBlockDefault(block.block_type, block.font_family,
+					block.font_size, block.font_style, block.alignment,
+					block.indent, block.line_space_before,
+					block.line_space_after));
+		}
+		return copy;
+	}
+
+	private static List<String> copyList(List<String> list) {
+		if (list == null) {
+			return null;
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(list));
+	}
+
+	/**
+	 * 创建引擎参数
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * 编译 XML 模板，编译好的模板可以被多个线程同时使用
+	 * @param xml_stream XML 模板数据流
+	 * @return
+	 * @throws Exception
+	 */
+	public CompiledTemplate compile(InputStream xml_stream) throws Exception {
+		CompiledTemplate template = CompiledTemplate.compile(xml_stream);
+		template.setStaticPageCache(static_page_cache);
+		return template;
+	}
+
+	/**
+	 * 编译 XML 模板，名称出现在 JFR 事件中
+	 * @param xml_stream XML 模板数据流
+	 * @param name 模板名称，例如文件名
+	 * @return
+	 * @throws Exception
+	 */
+	public CompiledTemplate compile(InputStream xml_stream, String name)
+			throws Exception {
+		CompiledTemplate template = CompiledTemplate.compile(xml_stream, name);
+		template.setStaticPageCache(static_page_cache);
+		return template;
+	}
+
+	/**
+	 * 按引擎参数创建 PDF 文档，调用者可以在 open() 之前再做单独的设置，
+	 * 例如加密、二维码
+	 * @param out_stream 输出流
+	 * @return
+	 */
+	public PDFDoc createPDFDoc(OutputStream out_stream) {
+		PDFDoc pdf_doc = new PDFDoc(out_stream);
+		pdf_doc.setPageSize(page_size);
+		pdf_doc.setPageMargin(page_margin_left, page_margin_right,
+				page_margin_top, page_margin_bottom);
+		for (PDFBlockDefault block : block_defaults) {
+			pdf_doc.setBlockDefault(block.block_type, block.font_family,
+					block.font_size, block.font_style, block.alignment,
+					block.indent, block.line_space_before,
+					block.line_space_after);
+		}
+		if (encoding != null) {
+			pdf_doc.setEncoding(encoding);
+		}
+		pdf_doc.setOutputProfile(output_profile);
+		pdf_doc.setDeflatePool(deflate_pool);
+		if (page_num) {
+			pdf_doc.addPageNum();
+		}
+		if (header_text != null) {
+			pdf_doc.addHeader(header_text);
+		}
+		if (marker_text != null) {
+			pdf_doc.addTextMarker(marker_text, marker_opacity, marker_angle,
+					marker_font_size, marker_style);
+		}
+		return pdf_doc;
+	}
+
+	/**
+	 * 按引擎参数创建 HTML 文档，调用者可以在 open() 之前再做单独的设置，
+	 * 例如标题
+	 * @param out_stream 输出流
+	 * @return
+	 */
+	public HTMLDoc createHTMLDoc(OutputStream out_stream) {
+		HTMLDoc html_doc = new HTMLDoc(out_stream);
+		html_doc.setLinkPaths(css_paths, js_paths);
+		if (html_declare != null) {
+			html_doc.setDeclare(html_declare);
+		}
+		if (html_extra != null) {
+			html_doc.setExtra(html_extra);
+		}
+		html_doc.setType(html_type);
+		if (encoding != null) {
+			html_doc.setEncoding(encoding);
+		}
+		return html_doc;
+	}
+
+	/**
+	 * 生成 PDF 文档
+	 * @param template 编译好的模板
+	 * @param data_source 数据源
+	 * @param out_stream 输出流
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(CompiledTemplate template,
+			DataSource data_source, OutputStream out_stream)
+					throws IOException {
+		return template.render(createPDFDoc(out_stream), data_source);
+	}
+
+	/**
+	 * 使用 JSON 数据生成 PDF 文档
+	 * @param template 编译好的模板
+	 * @param json_object JSON 数据，可以为 null
+	 * @param out_stream 输出流
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(CompiledTemplate template,
+			Map<?, ?> json_object, OutputStream out_stream)
+					throws IOException {
+		return render(template, DataSource.fromMap(json_object), out_stream);
+	}
+
+	/**
+	 * 使用 JSON 数据流生成 PDF 文档，只解析模板中用到的数据
+	 * @param template 编译好的模板
+	 * @param json_stream UTF-8 编码的 JSON 数据流
+	 * @param out_stream 输出流
+	 * @return 静态页面缓存的使用情况
+	 * @throws IOException
+	 */
+	public PageCacheStats render(CompiledTemplate template,
+			InputStream json_stream, OutputStream out_stream)
+					throws IOException {
+		return render(template, template.parseData(json_stream), out_stream);
+	}
+
+	/**
+	 * 生成 HTML 文档
+	 * @param template 编译好的模板
+	 * @param data_source 数据源
+	 * @param out_stream 输出流
+	 * @throws IOException
+	 */
+	public void renderHTML(CompiledTemplate template,
+			DataSource data_source, OutputStream out_stream)
+					throws IOException {
+		template.render(createHTMLDoc(out_stream), data_source);
+	}
+
+	/**
+	 * 使用 JSON 数据生成 HTML 文档
+	 * @param template 编译好的模板
+	 * @param json_object JSON 数据，可以为 null
+	 * @param out_stream 输出流
+	 * @throws IOException
+	 */
+	public void renderHTML(CompiledTemplate template,
+			Map<?, ?> json_object, OutputStream out_stream)
+					throws IOException {
+		renderHTML(template, DataSource.fromMap(json_object), out_stream);
+	}
+
+
+	/**
+	 * 引擎参数，不是线程安全的，build() 之后的修改不影响已经创建的引擎
+	 */
+	public static final class Builder
+	{
+		private Rectangle page_size = PageSize.A4;
+		private int page_margin_left = 45;
+		private int page_margin_right = 45;
+		private int page_margin_top = 50;
+		private int page_margin_bottom = 56;
+		private final List<PDFBlockDefault> block_defaults =
+				PDFDoc.createBlockDefaults();
+		private String encoding = null;
+		private PDFOutputProfile output_profile = PDFOutputProfile.BALANCED;
+		private ForkJoinPool deflate_pool = null;
+		private boolean static_page_cache = false;
+		private String font_dir = null;
+		private boolean font_dir_set = false;
+
+		private boolean page_num = false;
+		private String header_text = null;
+		private String marker_text = null;
+		private float marker_opacity;
+		private int marker_angle;
+		private int marker_font_size;
+		private int marker_style;
+
+		private List<String> css_paths = null;
+		private List<String> js_paths = null;
+		private String html_declare = null;
+		private String html_extra = null;
+		private int html_type = HTMLDoc.TYPE_INPUT;
+
+		private Builder() {
+		}
+
+		/**
+		 * 设置页面大小，默认 A4
+		 */
+		public Builder setPageSize(Rectangle page_size) {
+			this.page_size = page_size;
+			return this;
+		}
+
+		/**
+		 * 设置页面边距
+		 */
+		public Builder setPageMargin(int left, int right, int top,
+				int bottom) {
+			this.page_margin_left = left;
+			this.page_margin_right = right;
+			this.page_margin_top = top;
+			this.page_margin_bottom = bottom;
+			return this;
+		}
+
+		/**
+		 * 设置块默认属性，参数与 PDFDoc.setBlockDefault() 相同
+		 */
+		public Builder setBlockDefault(int block_type, int font_family,
+				int font_size, int font_style, int alignment, float indent,
+				float line_space_before, float line_space_after) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.font_family = font_family;
+				block.font_size = font_size;
+				block.font_style = font_style;
+				block.alignment = alignment;
+				block.indent = indent;
+				block.line_space_before = line_space_before;
+				block.line_space_after = line_space_after;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认字体家族
+		 */
+		public Builder setBlockDefaultFontFamily(int block_type,
+				int font_family) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.font_family = font_family;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认字体大小
+		 */
+		public Builder setBlockDefaultFontSize(int block_type, int font_size) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.font_size = font_size;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认字体风格
+		 */
+		public Builder setBlockDefaultFontStyle(int block_type,
+				int font_style) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.font_style = font_style;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认对齐方式
+		 */
+		public Builder setBlockDefaultAlignment(int block_type,
+				int alignment) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.alignment = alignment;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认首行缩进
+		 */
+		public Builder setBlockDefaultIndent(int block_type, float indent) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.indent = indent;
+			}
+			return this;
+		}
+
+		/**
+		 * 设置块的默认段前、段后间距
+		 */
+		public Builder setBlockDefaultLineSpace(int block_type,
+				float line_space_before, float line_space_after) {
+			PDFBlockDefault block = getBlock(block_type);
+			if (block != null) {
+				block.line_space_before = line_space_before;
+				block.line_space_after = line_space_after;
+			}
+			return this;
+		}
+
+		private PDFBlockDefault getBlock(int block_type) {
+			for (PDFBlockDefault block : block_defaults) {
+				if (block.block_type == block_type) {
+					return block;
+				}
+			}
+			System.err.println("Block type '" + block_type + "' unknown.");
+			return null;
+		}
+
+		/**
+		 * 设置输出文件编码
+		 */
+		public Builder setEncoding(String encoding) {
+			this.encoding = encoding;
+			return this;
+		}
+
+		/**
+		 * 设置 PDF 输出方式，默认为 PDFOutputProfile.BALANCED
+		 */
+		public Builder setOutputProfile(PDFOutputProfile output_profile) {
+			this.output_profile = output_profile;
+			return this;
+		}
+
+		/**
+		 * compile() 编译的模板是否缓存静态段的排版结果，默认关闭。
+		 * 开启后页面中的注释和链接不会保留，每段单独嵌入字体子集，
+		 * 参考 CompiledTemplate.setStaticPageCache()
+		 */
+		public Builder setStaticPageCache(boolean enabled) {
+			this.static_page_cache = enabled;
+			return this;
+		}
+
+		/**
+		 * 关闭 PDF 文档时在 pool 中并行压缩，默认为 null，生成时顺序压缩，
+		 * 参考 PDFDoc.setDeflatePool()
+		 */
+		public Builder setDeflatePool(ForkJoinPool pool) {
+			this.deflate_pool = pool;
+			return this;
+		}
+
+		/**
+		 * 设置字体文件目录，在 build() 时设置到 FontRegistry，
+		 * 字体由所有引擎共享，只影响之后首次加载的字体
+		 * @param dir 目录路径，null 表示使用 classpath
+		 */
+		public Builder setFontDirectory(String dir) {
+			this.font_dir = dir;
+			this.font_dir_set = true;
+			return this;
+		}
+
+		/**
+		 * 在每一页底部添加 "第 X 页 共 Y 页"
+		 */
+		public Builder setPageNum(boolean page_num) {
+			this.page_num = page_num;
+			return this;
+		}
+
+		/**
+		 * 在每一页添加页眉，null 表示没有页眉
+		 */
+		public Builder setHeader(String text) {
+			this.header_text = text;
+			return this;
+		}
+
+		/**
+		 * 在每一页添加文字水印，参数与 PDFDoc.addTextMarker() 相同
+		 */
+		public Builder setTextMarker(String text, float opacity, int angle,
+				int font_size, int style) {
+			this.marker_text = text;
+			this.marker_opacity = opacity;
+			this.marker_angle = angle;
+			this.marker_font_size = font_size;
+			this.marker_style = style;
+			return this;
+		}
+
+		/**
+		 * 设置 HTML 文档中的 CSS 和 JS 链接
+		 */
+		public Builder setHtmlLinks(List<String> css_paths,
+				List<String> js_paths) {
+			this.css_paths = css_paths;
+			this.js_paths = js_paths;
+			return this;
+		}
+
+		/**
+		 * 设置 HTML 文档的声明
+		 */
+		public Builder setHtmlDeclare(String declare) {
+			this.html_declare = declare;
+			return this;
+		}
+
+		/**
+		 * 设置 HTML 文档的附加内容
+		 */
+		public Builder setHtmlExtra(String extra) {
+			this.html_extra = extra;
+			return this;
+		}
+
+		/**
+		 * 设置 HTML 文档类型，HTMLDoc.TYPE_INPUT 或 TYPE_COMBO
+		 */
+		public Builder setHtmlType(int type) {
+			this.html_type = type;
+			return this;
+		}
+
+		/**
+		 * 创建引擎
+		 */
+		public TextPdfEngine build() {
+			if (font_dir_set) {
+				FontRegistry.setFontDirectory(font_dir);
+			}
+			return new TextPdfEngine(this);
+		}
+	}
+
+}
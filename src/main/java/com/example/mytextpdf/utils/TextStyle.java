@@ -0,0 +1,277 @@
+package com.example.mytextpdf.utils;
+
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 解析好的文本片段样式
+ *
+ * TextChunk 的属性(font-family、font-size、font-style、align 等)只解析一次，
+ * 属性相同的片段共享同一个不可变的 TextStyle 对象，生成 PDF 时不再逐个
+ * 片段解析字符串。样式对应的 iText Font 按块默认属性缓存。
+ */
+final class TextStyle
+{
+	// 属性中没有指定
+	static final int UNSET = Integer.MIN_VALUE;
+
+	// 最多保存的样式数量，超过后新的样式不再共享
+	private static final int MAX_STYLES = 4096;
+
+	private static final ConcurrentHashMap<Map<String, String>, TextStyle>
+			styles = new ConcurrentHashMap<Map<String, String>, TextStyle>();
+	private static final ConcurrentHashMap<FontKey, Font> fonts =
+			new ConcurrentHashMap<FontKey, Font>();
+
+	static final TextStyle EMPTY = new TextStyle(
+			Collections.<String, String>emptyMap());
+
+	final Map<String, String> attrs;
+
+	final int font_family;
+	final int font_size;
+	final int font_style;
+	final float text_rise;
+	// minlen 属性存在时为 true，minlen 为 UNSET 表示值无效
+	final boolean has_minlen;
+	final int minlen;
+
+	final int alignment;
+	final float indent;
+	final float space_before;
+	final float space_after;
+	final int colspan;
+
+	// 最近一次使用的字体，块默认属性通常不变，不需要每次查找
+	private volatile FontKey last_font = null;
+
+	/**
+	 * 取得属性对应的共享样式
+	 * @param attrs 属性
+	 * @return
+	 */
+	static TextStyle of(Map<String, String> attrs) {
+		if (attrs.isEmpty()) {
+			return EMPTY;
+		}
+		TextStyle style = styles.get(attrs);
+		if (style == null) {
+			style = new TextStyle(attrs);
+			if (styles.size() < MAX_STYLES) {
+				TextStyle old = styles.putIfAbsent(style.attrs, style);
+				if (old != null) {
+					style = old;
+				}
+			}
+		}
+		return style;
+	}
+
+	private TextStyle(Map<String, String> attrs) {
+		// 与原来 TextChunk 中逐个添加的 HashMap 相同，保持遍历顺序
+		Map<String, String> copy = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : attrs.entrySet()) {
+			copy.put(entry.getKey(), entry.getValue());
+		}
+		this.attrs = Collections.unmodifiableMap(copy);
+
+		int family = UNSET;
+		String value = attrs.get("font-family");
+		if (value != null) {
+			if (value.equalsIgnoreCase("heiti") ||
+					value.equalsIgnoreCase("hei")) {
+				family = PDFDoc.FONT_FAMILY_HEI;
+			} else if (value.equalsIgnoreCase("songti") ||
+					value.equalsIgnoreCase("song")) {
+				family = PDFDoc.FONT_FAMILY_SONG;
+			} else {
+				System.err.println("Font family '" + value + "' unknown!");
+			}
+		}
+		this.font_family = family;
+
+		float rise = 0;
+		boolean small = false;
+		value = attrs.get("super");
+		if (value != null && value.equalsIgnoreCase("true")) {
+			rise = 6.0f;
+			small = true;
+		}
+		value = attrs.get("sub");
+		if (value != null && value.equalsIgnoreCase("true")) {
+			rise = -3.0f;
+			small = true;
+		}
+		this.text_rise = rise;
+
+		int size = UNSET;
+		value = attrs.get("font-size");
+		if (value != null) {
+			try {
+				size = Integer.parseInt(value);
+			} catch (Exception ex) {
+				System.err.println("Font size '" + value + "' invalid.");
+			}
+		} else if (small) {
+			// 上标、下标默认使用小字体
+			size = 8;
+		}
+		this.font_size = size;
+
+		int style = UNSET;
+		value = attrs.get("font-style");
+		if (value != null) {
+			style = 0;
+			String[] names = value.split(",");
+			for (int i = 0; i < names.length; i++) {
+				String label = names[i].trim();
+				if (label.equalsIgnoreCase("bold")) {
+					style |= Font.BOLD;
+				} else if (label.equalsIgnoreCase("italic")) {
+					style |= Font.ITALIC;
+				} else if (label.equalsIgnoreCase("underline")) {
+					style |= Font.UNDERLINE;
+				}
+			}
+		}
+		this.font_style = style;
+
+		value = attrs.get("minlen");
+		int min = UNSET;
+		if (value != null && value.length() > 0) {
+			try {
+				min = Integer.parseInt(value);
+			} catch (Exception ex) {
+				System.err.println("minlen need a integer value.");
+			}
+		}
+		this.has_minlen = value != null && value.length() > 0;
+		this.minlen = min;
+
+		int align = UNSET;
+		value = attrs.get("align");
+		if (value != null) {
+			if (value.equalsIgnoreCase("left")) {
+				align = Element.ALIGN_LEFT;
+			} else if (value.equalsIgnoreCase("center")) {
+				align = Element.ALIGN_CENTER;
+			} else if (value.equalsIgnoreCase("right")) {
+				align = Element.ALIGN_RIGHT;
+			} else {
+				System.err.println("Block alignment type '"
+						+ value + "' unknown.");
+			}
+		}
+		this.alignment = align;
+
+		this.indent = parseFloat(attrs, "indent",
+				"Indent attribute must has a float value");
+		this.space_before = parseFloat(attrs, "space-before",
+				"space-before attribute must has a float value");
+		this.space_after = parseFloat(attrs, "space-after",
+				"space-after attribute must has a float value");
+
+		int span = UNSET;
+		value = attrs.get("colspan");
+		if (value != null) {
+			try {
+				span = Integer.parseInt(value);
+			} catch (Exception ex) {
+				System.err.println("colspan must has a integer value");
+			}
+		}
+		this.colspan = span;
+	}
+
+	/**
+	 * @return 没有这个属性或者格式错误时返回 NaN
+	 */
+	private static float parseFloat(Map<String, String> attrs, String name,
+			String error) {
+		String value = attrs.get(name);
+		if (value != null) {
+			try {
+				return Float.parseFloat(value);
+			} catch (Exception ex) {
+				System.err.println(error);
+			}
+		}
+		return Float.NaN;
+	}
+
+	/**
+	 * 取得样式在块默认属性下对应的字体，相同的字体共享一个 Font 对象
+	 * @param block_default 块默认属性
+	 * @return
+	 * @throws IOException
+	 */
+	Font getFont(PDFBlockDefault block_default) throws IOException {
+		int family = font_family != UNSET ?
+				font_family : block_default.font_family;
+		int size = font_size != UNSET ? font_size : block_default.font_size;
+		int style = font_style != UNSET ?
+				font_style : block_default.font_style;
+
+		FontKey key = last_font;
+		if (key != null && key.matches(family, size, style)) {
+			RenderMetrics.get().recordCache(RenderMetrics.CACHE_FONT, true);
+			return key.font;
+		}
+		key = new FontKey(family, size, style);
+		Font font = fonts.get(key);
+		RenderMetrics.get().recordCache(RenderMetrics.CACHE_FONT, font != null);
+		if (font == null) {
+			font = new Font(FontRegistry.getBaseFont(family), size, style);
+			Font old = fonts.putIfAbsent(key, font);
+			if (old != null) {
+				font = old;
+			}
+		}
+		key.font = font;
+		last_font = key;
+		return font;
+	}
+
+	/**
+	 * 字体家族、大小、风格
+	 */
+	private static final class FontKey
+	{
+		final int family;
+		final int size;
+		final int style;
+		Font font;
+
+		FontKey(int family, int size, int style) {
+			this.family = family;
+			this.size = size;
+			this.style = style;
+		}
+
+		boolean matches(int family, int size, int style) {
+			return this.family == family && this.size == size
+					&& this.style == style;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FontKey)) {
+				return false;
+			}
+			FontKey other = (FontKey) obj;
+			return matches(other.family, other.size, other.style);
+		}
+
+		@Override
+		public int hashCode() {
+			return (family * 31 + size) * 31 + style;
+		}
+	}
+
+}
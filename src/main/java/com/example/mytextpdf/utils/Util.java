@@ -22,6 +22,8 @@
  */
 package com.example.mytextpdf.utils;
 
+import java.io.IOException;
+
 /**
  * 通用工具类
  */
@@ -117,53 +119,216 @@ public class Util
 			{ '♣', "&#x2663;" }, { '♥', "&#x2665;" }, { '♦', "&#x2666;" },
 	};
 
+	private static final String[] xml_escape_table =
+			createEscapeTable(xml_escape_chars);
+	private static final String[] html_escape_table =
+			createEscapeTable(html_escape_chars);
+	private static final String[] html_break_escape_table =
+			createLineBreakTable(html_escape_table);
+
+	/**
+	 * 将转义字符数组转换为以字符为下标的查找表
+	 */
+	private static String[] createEscapeTable(Object[][] escape_chars) {
+		int size = 0;
+		for (Object[] entry : escape_chars) {
+			size = Math.max(size, (Character) entry[0] + 1);
+		}
+		String[] table = new String[size];
+		for (Object[] entry : escape_chars) {
+			table[(Character) entry[0]] = (String) entry[1];
+		}
+		return table;
+	}
+
+	private static String[] createLineBreakTable(String[] escape_table) {
+		String[] table = escape_table.clone();
+		table['\n'] = "<br/>";
+		return table;
+	}
+
+	private static String lookup(String[] table, char ch) {
+		return ch < table.length ? table[ch] : null;
+	}
+
+	/**
+	 * 查找下一个需要转义的字符位置，没有时返回字符串长度
+	 */
+	private static int nextEscape(String[] table, CharSequence string,
+			int from) {
+		int length = string.length();
+		for (int i = from; i < length; i++) {
+			char ch = string.charAt(i);
+			if (ch < table.length && table[ch] != null) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static String escapeString(String[] table, String string) {
+		if (string == null) {
+			return null;
+		}
+		int length = string.length();
+		int index = nextEscape(table, string, 0);
+		if (index == length) {
+			return string;
+		}
+		StringBuilder builder = new StringBuilder(length + 16);
+		int start = 0;
+		while (index < length) {
+			builder.append(string, start, index);
+			builder.append(table[string.charAt(index)]);
+			start = index + 1;
+			index = nextEscape(table, string, start);
+		}
+		builder.append(string, start, length);
+		return builder.toString();
+	}
+
+	private static void escapeTo(String[] table, CharSequence string,
+			Appendable out) throws IOException {
+		int length = string.length();
+		int start = 0;
+		int index = nextEscape(table, string, 0);
+		while (index < length) {
+			out.append(string, start, index);
+			out.append(table[string.charAt(index)]);
+			start = index + 1;
+			index = nextEscape(table, string, start);
+		}
+		out.append(string, start, length);
+	}
+
 	/**
 	 * 对 XML 中的特殊字符进行 escape 处理
 	 * @param ch
-	 * @return
+	 * @return 转义后的字符串，不需要转义时返回 null
 	 */
 	public static String escapeXMLChars(char ch) {
-		for (int i = 0; i < xml_escape_chars.length; i++) {
-			if ((Character) xml_escape_chars[i][0] == ch) {
-				return (String) xml_escape_chars[i][1];
-			}
-		}
-		return null;
+		return lookup(xml_escape_table, ch);
 	}
 
 	/**
 	 * 对 HTML 中的特殊字符进行 escape 处理
 	 * @param ch
-	 * @return
+	 * @return 转义后的字符串，不需要转义时返回 null
 	 */
 	public static String escapeHTMLChars(char ch) {
-		for (int i = 0; i < html_escape_chars.length; i++) {
-			if ((Character) html_escape_chars[i][0] == ch) {
-				return (String) html_escape_chars[i][1];
-			}
-		}
-		return null;
+		return lookup(html_escape_table, ch);
+	}
+
+	/**
+	 * 对 XML 中的特殊字符进行 escape 处理
+	 * @param string
+	 * @return 不需要转义时返回原字符串
+	 */
+	public static String escapeXMLString(String string) {
+		return escapeString(xml_escape_table, string);
 	}
 
 	/**
 	 * 对 HTML 中的特殊字符进行 escape 处理
 	 * @param string
-	 * @return
+	 * @return 不需要转义时返回原字符串
 	 */
 	public static String escapeHTMLString(String string) {
-		if (string == null) {
-			return null;
-		}
-		StringBuilder builder = new StringBuilder();
-		for (int i = 0; i < string.length(); i++) {
-			String escape = escapeHTMLChars(string.charAt(i));
-			if (escape != null) {
-				builder.append(escape);
-			} else {
-				builder.append(string.charAt(i));
+		return escapeString(html_escape_table, string);
+	}
+
+	/**
+	 * 对 HTML 中的特殊字符进行 escape 处理，并将换行转换为 &lt;br/&gt;
+	 * @param string
+	 * @return 不需要转义时返回原字符串
+	 */
+	public static String escapeHTMLText(String string) {
+		return escapeString(html_break_escape_table, string);
+	}
+
+	/**
+	 * 对 XML 中的特殊字符进行 escape 处理，结果直接写入 out
+	 * @param string
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void escapeXML(CharSequence string, Appendable out)
+			throws IOException {
+		escapeTo(xml_escape_table, string, out);
+	}
+
+	/**
+	 * 对 HTML 中的特殊字符进行 escape 处理，结果直接写入 out
+	 * @param string
+	 * @param out
+	 * @param line_break 是否将换行转换为 &lt;br/&gt;
+	 * @throws IOException
+	 */
+	public static void escapeHTML(CharSequence string, Appendable out,
+			boolean line_break) throws IOException {
+		escapeTo(line_break ? html_break_escape_table : html_escape_table,
+				string, out);
+	}
+
+	/**
+	 * 整理模板中的文字并添加到 builder，结果与
+	 * new String(ch, start, length).replaceAll("\\s*\n+\\s*", "").trim()
+	 * 相同：删除包含换行的连续空白，再删除首尾的空白。
+	 * 只扫描一遍，不创建临时字符串。
+	 * @param builder 结果添加到这里
+	 * @param ch 字符数组
+	 * @param start 开始位置
+	 * @param length 长度
+	 */
+	public static void appendTemplateText(StringBuilder builder,
+			char[] ch, int start, int length) {
+		int mark = builder.length();
+		int end = start + length;
+		int i = start;
+
+		while (i < end) {
+			char c = ch[i];
+			if (!isRegexSpace(c)) {
+				builder.append(c);
+				i++;
+				continue;
+			}
+			// 一段连续的空白，包含换行时整段删除
+			int run_end = i;
+			boolean has_newline = false;
+			while (run_end < end && isRegexSpace(ch[run_end])) {
+				if (ch[run_end] == '\n') {
+					has_newline = true;
+				}
+				run_end++;
+			}
+			if (!has_newline) {
+				builder.append(ch, i, run_end - i);
 			}
+			i = run_end;
 		}
-		return builder.toString();
+
+		// 与 String.trim() 相同，删除首尾 <= ' ' 的字符
+		int last = builder.length();
+		while (last > mark && builder.charAt(last - 1) <= ' ') {
+			last--;
+		}
+		builder.setLength(last);
+		int first = mark;
+		while (first < last && builder.charAt(first) <= ' ') {
+			first++;
+		}
+		if (first > mark) {
+			builder.delete(mark, first);
+		}
+	}
+
+	/**
+	 * 正则表达式中 \s 匹配的字符
+	 */
+	private static boolean isRegexSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
 	}
 
 }
@@ -0,0 +1,183 @@
+package com.example.mytextpdf.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的数据路径
+ *
+ * value 元素的 id 和 repeat 元素的 path 在编译模板时解析为路径，
+ * 支持 . 分隔的键和 [n] 下标，例如 buyer.accounts[0].no，
+ * 单独一个 . 表示当前数据(repeat 中的数组元素本身)。
+ * 键可以是 Map 的键，也可以是 Java 对象的属性名。
+ */
+final class ValuePath
+{
+	/**
+	 * 路径在数据中不存在
+	 */
+	static final Object NOT_FOUND = new Object();
+
+	private final String expression;
+	// String 为对象的键，Integer 为数组下标
+	private final Object[] segments;
+
+	private ValuePath(String expression, Object[] segments) {
+		this.expression = expression;
+		this.segments = segments;
+	}
+
+	/**
+	 * 解析路径表达式
+	 * @param expression 路径表达式
+	 * @return
+	 * @throws IllegalArgumentException 路径格式错误
+	 */
+	static ValuePath compile(String expression) {
+		if (expression.indexOf('.') < 0 && expression.indexOf('[') < 0) {
+			// 普通的键，按原样查找
+			return new ValuePath(expression, new Object[] { expression });
+		}
+		String path = expression.trim();
+		if (path.equals(".")) {
+			return new ValuePath(expression, new Object[0]);
+		}
+		List<Object> segments = new ArrayList<Object>();
+		int length = path.length();
+		int i = 0;
+
+		while (i < length) {
+			char ch = path.charAt(i);
+			if (ch == '[') {
+				int end = path.indexOf(']', i);
+				if (end < 0) {
+					throw new IllegalArgumentException(
+							"Value path '" + expression + "' missing ']'.");
+				}
+				try {
+					segments.add(Integer.valueOf(
+							path.substring(i + 1, end).trim()));
+				} catch (NumberFormatException ex) {
+					throw new IllegalArgumentException("Value path '"
+							+ expression + "' index must be a integer.");
+				}
+				i = end + 1;
+				if (i < length && path.charAt(i) == '.') {
+					i++;
+				} else if (i < length && path.charAt(i) != '[') {
+					break;
+				}
+				continue;
+			}
+			int end = i;
+			while (end < length && path.charAt(end) != '.'
+					&& path.charAt(end) != '[') {
+				end++;
+			}
+			if (end == i) {
+				break;
+			}
+			segments.add(path.substring(i, end));
+			i = end;
+			if (i < length && path.charAt(i) == '.') {
+				i++;
+			}
+		}
+		if (i < length || segments.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Value path '" + expression + "' format error.");
+		}
+		return new ValuePath(expression, segments.toArray());
+	}
+
+	Object[] getSegments() {
+		return segments;
+	}
+
+	/**
+	 * 路径可能在哪些查找范围中找到，. 只在最内层查找
+	 * @param scopes 由外向内的查找范围
+	 */
+	static <T> List<T> lookupScopes(ValuePath path, List<T> scopes) {
+		if (path.segments.length == 0) {
+			return scopes.subList(scopes.size() - 1, scopes.size());
+		}
+		return scopes;
+	}
+
+	/**
+	 * 是否是多段路径，单个键的路径与原来的 id 查找方式相同
+	 */
+	private boolean isCompound() {
+		return segments.length > 1 || !(segments[0] instanceof String);
+	}
+
+	/**
+	 * 路径的第一段是否存在于 scope 中，用于在嵌套的 repeat 中
+	 * 由内向外查找数据
+	 */
+	boolean matches(Object scope) {
+		if (segments.length == 0) {
+			return true;
+		}
+		if (isCompound() && scope instanceof Map
+				&& ((Map<?, ?>) scope).containsKey(expression)) {
+			return true;
+		}
+		return step(scope, segments[0]) != NOT_FOUND;
+	}
+
+	/**
+	 * 在 scope 中查找路径对应的数据
+	 * @param scope 对象、数组或其它数据
+	 * @return 找不到时返回 NOT_FOUND
+	 */
+	Object resolve(Object scope) {
+		if (segments.length > 0 && isCompound() && scope instanceof Map
+				&& ((Map<?, ?>) scope).containsKey(expression)) {
+			// 键本身包含 . 或 [ 时按原样查找
+			return ((Map<?, ?>) scope).get(expression);
+		}
+		Object value = scope;
+		for (Object segment : segments) {
+			value = step(value, segment);
+			if (value == NOT_FOUND) {
+				break;
+			}
+		}
+		return value;
+	}
+
+	private static Object step(Object value, Object segment) {
+		if (segment instanceof String) {
+			if (value instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				if (map.containsKey(segment)) {
+					return map.get(segment);
+				}
+			} else {
+				return BeanProperties.get(value, (String) segment);
+			}
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			int index = (Integer) segment;
+			if (index >= 0 && index < list.size()) {
+				return list.get(index);
+			}
+		} else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			int index = (Integer) segment;
+			if (index >= 0 && index < array.length) {
+				return array[index];
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+}
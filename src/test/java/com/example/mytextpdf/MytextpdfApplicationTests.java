@@ -1,17 +1,68 @@
 package com.example.mytextpdf;
 
+import com.example.mytextpdf.contract.JyrPdfDO;
+import com.example.mytextpdf.utils.BatchOutput;
+import com.example.mytextpdf.utils.BatchRenderer;
+import com.example.mytextpdf.utils.BatchSummary;
+import com.example.mytextpdf.utils.CompiledTemplate;
+import com.example.mytextpdf.utils.DataSource;
 import com.example.mytextpdf.utils.DocReader;
+import com.example.mytextpdf.utils.FontRegistry;
+import com.example.mytextpdf.utils.JSONDataSource;
+import com.example.mytextpdf.utils.PDFDoc;
+import com.example.mytextpdf.utils.PDFOutputProfile;
+import com.example.mytextpdf.utils.PageCacheStats;
+import com.example.mytextpdf.utils.RenderMetrics;
+import com.example.mytextpdf.utils.SegmentCache;
 import com.example.mytextpdf.utils.PDFContant;
 import com.example.mytextpdf.utils.PDFProcess;
 import com.example.mytextpdf.utils.TextParser;
+import com.example.mytextpdf.utils.TextPdfEngine;
+import com.example.mytextpdf.utils.Util;
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.*;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.junit.Before;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.ResourceUtils;
+import org.springframework.util.StreamUtils;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 @SpringBootTest
 class MytextpdfApplicationpdfTemplate {
@@ -67,4 +118,1410 @@ class MytextpdfApplicationpdfTemplate {
         pdfProcess.finish();
     }
 
+    @Test
+    public void testFontRegistry() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+
+        // 第一次生成加载字体，之后的文档和 PDFProcess 不再加载
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextParser(new ByteArrayInputStream(xml), new ByteArrayInputStream(json), out).genPDF();
+        int fonts = FontRegistry.getLoadedFontCount();
+        long bytes = FontRegistry.getLoadedFontBytes();
+        assertTrue(fonts > 0);
+        assertTrue(bytes > 0);
+
+        for (int i = 0; i < 3; i++) {
+            new TextParser(new ByteArrayInputStream(xml), new ByteArrayInputStream(json),
+                    new ByteArrayOutputStream()).genPDF();
+        }
+        PDFProcess process = new PDFProcess(new ByteArrayInputStream(out.toByteArray()),
+                new ByteArrayOutputStream());
+        process.addTextMarker("水印", 0.2f, 45, 18, PDFProcess.MARKER_STYLE_FULL);
+        process.finish();
+        assertEquals(fonts, FontRegistry.getLoadedFontCount());
+        assertEquals(bytes, FontRegistry.getLoadedFontBytes());
+
+        // 多个线程取得的是同一个 BaseFont 对象
+        final BaseFont song = FontRegistry.getBaseFont(PDFDoc.FONT_FAMILY_SONG);
+        assertSame(song, FontRegistry.getBaseFont(FontRegistry.FONT_SONG));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BaseFont>> results = new ArrayList<Future<BaseFont>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<BaseFont>() {
+                    @Override
+                    public BaseFont call() throws Exception {
+                        return FontRegistry.getBaseFont(PDFDoc.FONT_FAMILY_SONG);
+                    }
+                }));
+            }
+            for (Future<BaseFont> result : results) {
+                assertSame(song, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompiledTemplateReuse() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextParser(new ByteArrayInputStream(xml), new ByteArrayInputStream(json), out).genPDF();
+        byte[] expected = out.toByteArray();
+        PdfReader expected_reader = new PdfReader(expected);
+
+        // 同一个编译好的模板多次生成，每次都与 TextParser 的结果相同
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        DataSource data = template.parseData(new ByteArrayInputStream(json));
+        for (int round = 0; round < 3; round++) {
+            out = new ByteArrayOutputStream();
+            template.renderPDF(data, out);
+            PdfReader reader = new PdfReader(out.toByteArray());
+            assertEquals(expected_reader.getNumberOfPages(), reader.getNumberOfPages());
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                assertEquals(PdfTextExtractor.getTextFromPage(expected_reader, i),
+                        PdfTextExtractor.getTextFromPage(reader, i), "page " + i);
+            }
+            reader.close();
+            assertEquals(pdfObjects(expected), pdfObjects(out.toByteArray()));
+        }
+        expected_reader.close();
+    }
+
+    @Test
+    public void testBatchRenderer() throws Exception {
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(
+                "<textpdf><para><value id=\"no\"/></para></textpdf>".getBytes("UTF-8")));
+
+        // 背压：输出很慢时，读取的记录数最多领先输出 线程数 + 队列长度
+        final int threads = 2, queue_size = 3, total = 40;
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger max_pending = new AtomicInteger();
+        Iterator<Map<String, Object>> records = new Iterator<Map<String, Object>>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < total;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                next++;
+                max_pending.accumulateAndGet(next - written.get(), Math::max);
+                return record("R" + next);
+            }
+        };
+        BatchRenderer renderer = new BatchRenderer(template);
+        renderer.setThreads(threads);
+        renderer.setQueueSize(queue_size);
+        BatchSummary summary = renderer.renderMaps(records, new BatchOutput() {
+            @Override
+            public void write(String name, byte[] contents) throws IOException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                written.incrementAndGet();
+            }
+        });
+        assertEquals(total, summary.getTotal());
+        assertEquals(total, summary.getSucceeded());
+        assertEquals(total, written.get());
+        assertTrue(max_pending.get() <= threads + queue_size + 1, "pending " + max_pending);
+
+        // 失败的记录计入统计，不影响其它记录
+        String ndjson = "{\"data\": {\"no\": \"A\"}}\n"
+                + "{\"data\": \n"
+                + "\n"
+                + "{\"data\": {\"no\": \"B\"}}\n";
+        renderer = new BatchRenderer(template);
+        renderer.setNameKey("no");
+        summary = renderer.renderNDJSON(new ByteArrayInputStream(ndjson.getBytes("UTF-8")),
+                new BatchOutput() {
+                    @Override
+                    public void write(String name, byte[] contents) {
+                    }
+                });
+        assertEquals(3, summary.getTotal());
+        assertEquals(1, summary.getFailed());
+        assertTrue(summary.getFailures().get(0).startsWith("record 1:"));
+
+        // 目录输出：名称重复的记录不覆盖之前的文件，没有名称的使用序号，
+        // 单线程时按记录的顺序命名
+        Path dir = Files.createTempDirectory("textpdf-batch");
+        try {
+            renderer.setThreads(1);
+            List<Map<String, Object>> list = Arrays.asList(
+                    record("A"), record("a"), record(null), record("C/D"));
+            summary = renderer.renderMaps(list.iterator(), BatchOutput.directory(dir.toFile()));
+            assertEquals(0, summary.getFailed());
+            String[] files = dir.toFile().list();
+            Arrays.sort(files);
+            assertEquals(Arrays.asList("00000002.pdf", "A.pdf", "C_D.pdf", "a-1.pdf"),
+                    Arrays.asList(files));
+            for (String file : files) {
+                assertTrue(new PdfReader(Files.readAllBytes(dir.resolve(file)))
+                        .getNumberOfPages() == 1);
+            }
+        } finally {
+            for (File file : dir.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(dir);
+        }
+
+        // ZIP 输出：重复的名称不会导致 ZipException
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        List<Map<String, Object>> list = Arrays.asList(record("A"), record("A"), record("A"));
+        summary = renderer.renderMaps(list.iterator(), BatchOutput.zip(zip));
+        assertEquals(0, summary.getFailed(), String.valueOf(summary.getFailures()));
+        List<String> entries = new ArrayList<String>();
+        ZipInputStream zip_stream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()));
+        for (ZipEntry entry; (entry = zip_stream.getNextEntry()) != null; ) {
+            entries.add(entry.getName());
+        }
+        Collections.sort(entries);
+        assertEquals(3, entries.size());
+        assertEquals(3, new java.util.HashSet<String>(entries).size());
+        assertTrue(entries.contains("A.pdf"));
+    }
+
+    private static Map<String, Object> record(String no) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        if (no != null) {
+            data.put("no", no);
+        }
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("data", data);
+        return record;
+    }
+
+    @Test
+    public void testSinglePassDecorations() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        DataSource data = template.parseData(new ByteArrayInputStream(json));
+
+        // 生成时直接添加水印、页眉、页码、二维码并加密
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        PDFDoc pdf_doc = new PDFDoc(single);
+        pdf_doc.addTextMarker("测试水印", 0.2f, 45, 18, PDFProcess.MARKER_STYLE_FULL);
+        pdf_doc.addHeader("TextPdf Contract");
+        pdf_doc.addPageNum();
+        pdf_doc.addQRCode("https://example.com/contract/1");
+        pdf_doc.encrypt("user", null, PDFProcess.ALLOW_PRINTING);
+        template.render(pdf_doc, data);
+
+        // 原来的做法：先生成，再用 PDFProcess 处理
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        template.renderPDF(data, plain);
+        ByteArrayOutputStream processed = new ByteArrayOutputStream();
+        PDFProcess process = new PDFProcess(new ByteArrayInputStream(plain.toByteArray()), processed);
+        // PdfStamper 要求在写出内容之前设置加密
+        process.encrypt("user", null, PDFProcess.ALLOW_PRINTING);
+        process.addTextMarker("测试水印", 0.2f, 45, 18, PDFProcess.MARKER_STYLE_FULL);
+        process.addHeader("TextPdf Contract");
+        process.addPageNum();
+        process.addQRCode("https://example.com/contract/1");
+        process.finish();
+
+        // 两种结果都需要用户密码打开，每一页的文字相同
+        final byte[] single_pdf = single.toByteArray();
+        com.itextpdf.text.exceptions.BadPasswordException error = null;
+        try {
+            new PdfReader(single_pdf);
+        } catch (com.itextpdf.text.exceptions.BadPasswordException ex) {
+            error = ex;
+        }
+        assertTrue(error != null, "opened without password");
+        PdfReader single_reader = new PdfReader(single_pdf, "user".getBytes("ISO-8859-1"));
+        PdfReader processed_reader = new PdfReader(processed.toByteArray(),
+                "user".getBytes("ISO-8859-1"));
+        assertTrue(single_reader.isEncrypted());
+        assertEquals((long) PDFProcess.ALLOW_PRINTING,
+                single_reader.getPermissions() & PDFProcess.ALLOW_PRINTING);
+        assertEquals(processed_reader.getNumberOfPages(), single_reader.getNumberOfPages());
+        for (int i = 1; i <= single_reader.getNumberOfPages(); i++) {
+            String text = PdfTextExtractor.getTextFromPage(single_reader, i);
+            assertEquals(PdfTextExtractor.getTextFromPage(processed_reader, i), text, "page " + i);
+            assertTrue(text.contains("TextPdf Contract"), "header on page " + i);
+        }
+        single_reader.close();
+        processed_reader.close();
+    }
+
+    @Test
+    public void testQRCodeCache() throws Exception {
+        final AtomicInteger hits = new AtomicInteger();
+        final AtomicInteger misses = new AtomicInteger();
+        RenderMetrics metrics = new RenderMetrics() {
+            @Override
+            public void recordCache(String cache, boolean hit) {
+                if (RenderMetrics.CACHE_QRCODE.equals(cache)) {
+                    (hit ? hits : misses).incrementAndGet();
+                }
+            }
+        };
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        CompiledTemplate.compile(new ByteArrayInputStream(
+                "<textpdf><para>QR</para></textpdf>".getBytes("UTF-8")))
+                .renderPDF(record("qr"), plain);
+        // 每次运行使用不同的内容，不受其他测试留在缓存中的矩阵影响
+        String contents = "https://example.com/contract/" + System.nanoTime();
+
+        List<byte[]> results = new ArrayList<byte[]>();
+        RenderMetrics.install(metrics);
+        try {
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                PDFProcess process = new PDFProcess(new ByteArrayInputStream(plain.toByteArray()), out);
+                process.addQRCode(contents);
+                process.finish();
+                results.add(out.toByteArray());
+            }
+        } finally {
+            RenderMetrics.install(null);
+        }
+        assertEquals(1, misses.get());
+        assertEquals(2, hits.get());
+
+        for (byte[] result : results) {
+            assertEquals(contents, decodeQRCode(result));
+        }
+    }
+
+    /**
+     * 从第一页的 Form XObject 中读出矢量二维码的矩形，还原为模块矩阵后解码
+     */
+    private static String decodeQRCode(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        PdfDictionary xobjects = reader.getPageN(1).getAsDict(PdfName.RESOURCES)
+                .getAsDict(PdfName.XOBJECT);
+        java.util.regex.Pattern rect = java.util.regex.Pattern.compile(
+                "(\\S+) (\\S+) (\\S+) (\\S+) re");
+        for (PdfName name : xobjects.getKeys()) {
+            PRStream stream = (PRStream) xobjects.getAsStream(name);
+            if (!PdfName.FORM.equals(stream.getAsName(PdfName.SUBTYPE))) {
+                continue;
+            }
+            float size = stream.getAsArray(PdfName.BBOX).getAsNumber(2).floatValue();
+            String content = new String(PdfReader.getStreamBytes(stream), "ISO-8859-1");
+            List<float[]> modules = new ArrayList<float[]>();
+            float module = size;
+            java.util.regex.Matcher m = rect.matcher(content);
+            while (m.find()) {
+                float[] r = new float[4];
+                for (int i = 0; i < 4; i++) {
+                    r[i] = Float.parseFloat(m.group(i + 1));
+                }
+                // 第一个矩形是白色背景
+                if (r[2] < size) {
+                    modules.add(r);
+                    module = Math.min(module, r[3]);
+                }
+            }
+            if (modules.isEmpty()) {
+                continue;
+            }
+            // 四周各有 4 个模块的空白
+            int quiet = 4;
+            int dimension = Math.round(size / module) - 2 * quiet;
+            com.google.zxing.common.BitMatrix bits =
+                    new com.google.zxing.common.BitMatrix(dimension);
+            for (float[] r : modules) {
+                int x = Math.round(r[0] / module) - quiet;
+                int y = Math.round((size - r[1] - r[3]) / module) - quiet;
+                bits.setRegion(x, y, Math.round(r[2] / module), 1);
+            }
+            reader.close();
+            return new com.google.zxing.qrcode.decoder.Decoder().decode(bits).getText();
+        }
+        reader.close();
+        return null;
+    }
+
+    @Test
+    public void testHTMLBaseline() throws Exception {
+        // 融资合同.html 由改为单个缓冲编码器输出之前的 HTMLDoc 生成
+        byte[] expected;
+        try (InputStream in = new ClassPathResource("pdfTemplate/融资合同.html").getInputStream()) {
+            expected = StreamUtils.copyToByteArray(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextParser parser = new TextParser(
+                new FileInputStream(staticPath + File.separator + "融资合同.xml"),
+                new FileInputStream(staticPath + File.separator + "融资合同.json"), out);
+        parser.setCSSLinks(new String[]{"a.css"});
+        parser.setJSLinks(new String[]{"b.js"});
+        parser.genHTML();
+        assertTrue(Arrays.equals(expected, out.toByteArray()), "html differs from baseline");
+    }
+
+    /**
+     * 水印对比：旧的做法每页重复输出文字，现在共享一个 Form XObject。
+     * 耗时见 src/jmh 中的 PDFProcessBenchmark
+     */
+    @Test
+    public void testTextMarkerXObject() throws Exception {
+        byte[] source = Files.readAllBytes(Paths.get(staticPath, "融资合同.pdf"));
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        legacyTextMarker(source, legacy, "测试水印", 0.2f, 45, 18);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFProcess process = new PDFProcess(new ByteArrayInputStream(source), out);
+        process.addTextMarker("测试水印", 0.2f, 45, 18, PDFProcess.MARKER_STYLE_FULL);
+        process.finish();
+
+        // 每一页都引用同一个绘制了文字的 Form XObject
+        PdfReader reader = new PdfReader(out.toByteArray());
+        PdfReader original = new PdfReader(source);
+        PRIndirectReference shared = null;
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            PdfDictionary xobjects = reader.getPageN(i).getAsDict(PdfName.RESOURCES)
+                    .getAsDict(PdfName.XOBJECT);
+            assertTrue(xobjects != null, "no xobject on page " + i);
+            PdfDictionary original_resources = original.getPageN(i).getAsDict(PdfName.RESOURCES);
+            PdfDictionary original_xobjects = original_resources == null ? null
+                    : original_resources.getAsDict(PdfName.XOBJECT);
+            List<PRIndirectReference> added = new ArrayList<PRIndirectReference>();
+            for (PdfName name : xobjects.getKeys()) {
+                if (original_xobjects == null || original_xobjects.get(name) == null) {
+                    added.add((PRIndirectReference) xobjects.get(name));
+                }
+            }
+            assertEquals(1, added.size(), "watermark xobjects on page " + i);
+            if (shared == null) {
+                shared = added.get(0);
+            }
+            assertEquals(shared.getNumber(), added.get(0).getNumber(), "page " + i);
+        }
+        PRStream form = (PRStream) PdfReader.getPdfObject(shared);
+        assertEquals(PdfName.FORM, form.getAsName(PdfName.SUBTYPE));
+        String content = new String(PdfReader.getStreamBytes(form), "ISO-8859-1");
+        assertTrue(content.contains("Tj") || content.contains("TJ"), "no text in watermark");
+        reader.close();
+        original.close();
+
+        assertTrue(out.size() < legacy.size(),
+                out.size() + " >= " + legacy.size());
+    }
+
+    private void legacyTextMarker(byte[] source, OutputStream out,
+                                  String text, float opacity, int angle,
+                                  int font_size) throws Exception {
+        PdfReader reader = new PdfReader(source);
+        PdfStamper stamper = new PdfStamper(reader, out);
+        BaseFont base_font = FontRegistry.getBaseFont(FontRegistry.FONT_SONG);
+
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            Rectangle page_rect = reader.getPageSizeWithRotation(i);
+            float width = page_rect.getWidth();
+            float height = page_rect.getHeight();
+            float text_width = font_size * text.length();
+
+            PdfGState gs = new PdfGState();
+            gs.setFillOpacity(opacity);
+
+            PdfContentByte content = stamper.getUnderContent(i);
+            content.beginText();
+            content.setGState(gs);
+            content.setColorFill(BaseColor.GRAY);
+            content.setFontAndSize(base_font, font_size);
+            for (float y = height - 20; y > -height + 20; y -= 100) {
+                for (float x = 10; x < width - 10; x += text_width) {
+                    content.showTextAligned(Element.ALIGN_JUSTIFIED_ALL,
+                            text, x, y, angle);
+                }
+            }
+            content.endText();
+        }
+        stamper.close();
+    }
+
+    /**
+     * 大文件对比：InputStream 整个读入堆内存，文件路径方式内存映射并按需读取
+     */
+    @Test
+    public void testMappedInputHeap() throws Exception {
+        Path large_pdf = Files.createTempFile("textpdf-large", ".pdf");
+        try {
+            com.itextpdf.text.Document document = new com.itextpdf.text.Document();
+            OutputStream out = Files.newOutputStream(large_pdf);
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCompressionLevel(PdfStream.NO_COMPRESSION);
+            document.open();
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                line.append("The quick brown fox jumps over the lazy dog. ");
+            }
+            for (int page = 0; page < 2000; page++) {
+                for (int i = 0; i < 10; i++) {
+                    document.add(new com.itextpdf.text.Paragraph(line.toString()));
+                }
+                document.newPage();
+            }
+            document.close();
+            out.close();
+
+            long file_size = Files.size(large_pdf);
+            // 统计当前线程分配的字节数，不受 GC 时机影响
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+                    java.lang.management.ManagementFactory.getThreadMXBean();
+            long thread_id = Thread.currentThread().getId();
+
+            long before = threads.getThreadAllocatedBytes(thread_id);
+            InputStream in = Files.newInputStream(large_pdf);
+            PDFProcess process = new PDFProcess(in, new ByteArrayOutputStream());
+            long stream_alloc = threads.getThreadAllocatedBytes(thread_id) - before;
+            in.close();
+
+            before = threads.getThreadAllocatedBytes(thread_id);
+            process = new PDFProcess(large_pdf, new ByteArrayOutputStream());
+            long mapped_alloc = threads.getThreadAllocatedBytes(thread_id) - before;
+            process.finish();
+
+            System.out.printf("file %d KB, allocated: stream %d KB, mapped %d KB%n",
+                    file_size / 1024, stream_alloc / 1024, mapped_alloc / 1024);
+            // 读入流时整个文件都在堆中，内存映射时只读入用到的对象
+            assertTrue(stream_alloc > file_size);
+            assertTrue(mapped_alloc < file_size / 2);
+        } finally {
+            Files.deleteIfExists(large_pdf);
+        }
+    }
+
+    @Test
+    public void testMappedInputClosedOnError() throws Exception {
+        Path broken = Files.createTempFile("textpdf-broken", ".pdf");
+        try {
+            Files.write(broken, "not a pdf".getBytes("UTF-8"));
+            java.lang.management.OperatingSystemMXBean os_bean =
+                    java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+            // 只有 Unix 上才能取得打开的文件数
+            assumeTrue(os_bean instanceof com.sun.management.UnixOperatingSystemMXBean);
+            com.sun.management.UnixOperatingSystemMXBean os =
+                    (com.sun.management.UnixOperatingSystemMXBean) os_bean;
+            long before = os.getOpenFileDescriptorCount();
+            for (int i = 0; i < 20; i++) {
+                // 抛出异常之前文件通道应该已经关闭
+                assertThrows(IOException.class,
+                        () -> new PDFProcess(broken, new ByteArrayOutputStream()));
+            }
+            long after = os.getOpenFileDescriptorCount();
+            assertTrue(after <= before + 1, before + " -> " + after);
+        } finally {
+            Files.deleteIfExists(broken);
+        }
+    }
+
+    /**
+     * 增量更新：原文件内容原样输出，只在后面追加修改过的对象。
+     * 与完整重写的耗时对比见 src/jmh 中的 PDFProcessBenchmark
+     */
+    @Test
+    public void testAppendMode() throws Exception {
+        byte[] source = Files.readAllBytes(Paths.get(staticPath, "融资合同.pdf"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFProcess process = new PDFProcess(new ByteArrayInputStream(source), out, true);
+        process.addQRCode("qrcode 以及中文");
+        process.addPageNum();
+        process.finish();
+
+        byte[] appended = out.toByteArray();
+        assertTrue(appended.length > source.length);
+        assertArrayEquals(source, Arrays.copyOf(appended, source.length));
+        PdfReader reader = new PdfReader(appended);
+        PdfReader original = new PdfReader(source);
+        assertEquals(original.getNumberOfPages(), reader.getNumberOfPages());
+        reader.close();
+        original.close();
+
+        // 增量更新不能加密
+        final PDFProcess append_process = new PDFProcess(
+                new ByteArrayInputStream(source), new ByteArrayOutputStream(), true);
+        assertThrows(IOException.class,
+                () -> append_process.encrypt("user", null, PDFProcess.ALLOW_PRINTING));
+        append_process.finish();
+    }
+
+    /**
+     * HTML/XML 转义：不需要转义的文本原样返回，换行只在 escapeHTMLText 中转为 <br/>
+     */
+    @Test
+    public void testEscape() throws Exception {
+        // 耗时见 src/jmh 中的 UtilBenchmark
+        StringBuilder cjk = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            cjk.append("保理公司已受让申请融资所对应的应收账款，");
+        }
+        String plain = cjk.toString();
+        assertSame(plain, Util.escapeHTMLString(plain));
+        assertSame(plain, Util.escapeXMLString(plain));
+        assertSame(plain, Util.escapeHTMLText(plain));
+
+        assertEquals("&#x003C;a href=&#x0022;x&#x0022;&#x003E;&#x0027;&#x0026;&#x0027;&#x003C;/a&#x003E;",
+                Util.escapeXMLString("<a href=\"x\">'&'</a>"));
+        assertEquals("fox\n&#x0026; dog", Util.escapeXMLString("fox\n& dog"));
+        assertEquals("fox\n&#x0026;&#x00A0;dog", Util.escapeHTMLString("fox\n& dog"));
+        assertEquals("line1<br/>line2&#x0026;&#x003C;x&#x003E;<br/>",
+                Util.escapeHTMLText("line1\nline2&<x>\n"));
+        assertNull(Util.escapeHTMLText(null));
+
+        StringWriter writer = new StringWriter();
+        Util.escapeHTML("a<b>&中文\n", writer, true);
+        assertEquals("a&#x003C;b&#x003E;&#x0026;中文<br/>", writer.toString());
+    }
+
+    /**
+     * 长表格分段输出，表头在每页重复
+     */
+    @Test
+    public void testStreamingTable() throws Exception {
+        // 耗时见 src/jmh 中的 TableBenchmark
+        int rows = 200;
+        StringBuilder xml = new StringBuilder();
+        xml.append("<textpdf><table columns=\"1,2,2,2\" header-rows=\"1\">");
+        xml.append("<cell>No</cell><cell>Date</cell><cell>Principal</cell><cell>Interest</cell>");
+        for (int i = 1; i <= rows; i++) {
+            xml.append("<cell>").append(i).append("</cell>");
+            xml.append("<cell>2024-01-15</cell><cell>1000.00</cell><cell>10.50</cell>");
+        }
+        xml.append("</table></textpdf>");
+        String json = "{\"title\": \"还款计划\", \"data\": {}}";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextParser(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")),
+                new ByteArrayInputStream(json.getBytes("UTF-8")), out).genPDF();
+
+        PdfReader reader = new PdfReader(out.toByteArray());
+        assertTrue(reader.getNumberOfPages() > 1, "table fits on one page");
+        int count = 0;
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            String[] lines = PdfTextExtractor.getTextFromPage(reader, page).split("\n");
+            assertEquals("No Date Principal Interest", lines[0], "header on page " + page);
+            for (String line : lines) {
+                if (line.endsWith("10.50")) {
+                    count++;
+                    assertTrue(line.startsWith(count + " "), line);
+                }
+            }
+        }
+        // 每一行只输出一次，顺序不变
+        assertEquals(rows, count);
+        reader.close();
+    }
+
+    /**
+     * repeat 元素和路径取值：分期列表生成段落，还款计划生成表格行
+     */
+    @Test
+    public void testRepeatTemplate() throws Exception {
+        // 耗时见 src/jmh 中的 TableBenchmark
+        int rows = 200;
+        String xml = "<textpdf>"
+                + "<para><span>Buyer:</span><value id=\"buyer.name\"/></para>"
+                + "<para><span>Account:</span><value id=\"buyer.accounts[0].no\"/></para>"
+                + "<repeat path=\"tranches\">"
+                + "<para><span>Tranche-</span><value id=\"no\"/>"
+                + "<span>/</span><value id=\"buyer.name\"/></para>"
+                + "</repeat>"
+                + "<table columns=\"1,2,2\" header-rows=\"1\">"
+                + "<cell>No</cell><cell>Date</cell><cell>Amount</cell>"
+                + "<repeat path=\"plan\">"
+                + "<cell><value id=\"period\"/></cell>"
+                + "<cell><value id=\"date\"/></cell>"
+                + "<cell>CNY<value id=\"amount\"/></cell>"
+                + "</repeat>"
+                + "</table></textpdf>";
+
+        JSONArray accounts = new JSONArray();
+        JSONObject account = new JSONObject();
+        account.put("no", "6221-0001");
+        accounts.add(account);
+        JSONObject buyer = new JSONObject();
+        buyer.put("name", "ACME");
+        buyer.put("accounts", accounts);
+
+        JSONArray tranches = new JSONArray();
+        for (int i = 1; i <= 3; i++) {
+            JSONObject tranche = new JSONObject();
+            tranche.put("no", (long) i);
+            tranches.add(tranche);
+        }
+        JSONArray plan = new JSONArray();
+        for (int i = 1; i <= rows; i++) {
+            JSONObject row = new JSONObject();
+            row.put("period", (long) i);
+            row.put("date", "2024-01-15");
+            row.put("amount", 1000.5);
+            plan.add(row);
+        }
+        JSONObject data = new JSONObject();
+        data.put("buyer", buyer);
+        data.put("tranches", tranches);
+        data.put("plan", plan);
+        JSONObject json = new JSONObject();
+        json.put("title", "repeat");
+        json.put("data", data);
+
+        CompiledTemplate template = CompiledTemplate.compile(
+                new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.renderPDF(json, out);
+
+        PdfReader reader = new PdfReader(out.toByteArray());
+        String page1 = PdfTextExtractor.getTextFromPage(reader, 1);
+        assertTrue(page1.contains("Buyer:ACME"), page1);
+        assertTrue(page1.contains("Account:6221-0001"), page1);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(page1.contains("Tranche-" + i + "/ACME"), page1);
+        }
+        int count = 0;
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            for (String line : PdfTextExtractor.getTextFromPage(reader, page).split("\n")) {
+                if (line.endsWith("CNY1000.5")) {
+                    count++;
+                    assertEquals(count + " 2024-01-15 CNY1000.5", line);
+                }
+            }
+        }
+        // 每条还款计划生成一行
+        assertEquals(rows, count);
+        reader.close();
+    }
+
+    /**
+     * Java 对象直接作为数据源，与先转换为 JSON 再解析的方式对比
+     */
+    @Test
+    public void testBeanDataSource() throws Exception {
+        CompiledTemplate template = CompiledTemplate.compile(
+                new FileInputStream(staticPath + File.separator + "融资合同.xml"));
+        JSONObject sample = (JSONObject) new JSONParser().parse(new InputStreamReader(
+                new FileInputStream(staticPath + File.separator + "融资合同.json"), "UTF-8"));
+
+        JyrPdfDO bean = new JyrPdfDO();
+        JyrPdfDO.DataBean data = new JyrPdfDO.DataBean();
+        for (Object key : ((Map<?, ?>) sample.get("data")).keySet()) {
+            String name = (String) key;
+            JyrPdfDO.DataBean.class.getMethod("set" + Character.toUpperCase(
+                    name.charAt(0)) + name.substring(1), String.class)
+                    .invoke(data, ((Map<?, ?>) sample.get("data")).get(key));
+        }
+        bean.setTitle((String) sample.get("title"));
+        bean.setData(data);
+
+        Map<String, Object> data_map = new HashMap<String, Object>();
+        for (java.beans.PropertyDescriptor property : java.beans.Introspector
+                .getBeanInfo(JyrPdfDO.DataBean.class, Object.class)
+                .getPropertyDescriptors()) {
+            data_map.put(property.getName(), property.getReadMethod().invoke(data));
+        }
+        JSONObject json = new JSONObject();
+        json.put("title", bean.getTitle());
+        json.put("data", data_map);
+        ByteArrayOutputStream json_pdf = new ByteArrayOutputStream();
+        template.renderPDF(DataSource.fromJSON(new ByteArrayInputStream(
+                json.toJSONString().getBytes("UTF-8"))), json_pdf);
+
+        ByteArrayOutputStream bean_pdf = new ByteArrayOutputStream();
+        template.renderPDF(DataSource.fromBean(bean), bean_pdf);
+
+        PdfReader json_reader = new PdfReader(json_pdf.toByteArray());
+        PdfReader bean_reader = new PdfReader(bean_pdf.toByteArray());
+        assertTrue(json_reader.getNumberOfPages() > 0);
+        assertEquals(json_reader.getNumberOfPages(), bean_reader.getNumberOfPages());
+        for (int i = 1; i <= json_reader.getNumberOfPages(); i++) {
+            assertArrayEquals(json_reader.getPageContent(i),
+                    bean_reader.getPageContent(i), "page " + i);
+        }
+    }
+
+    @Test
+    public void testSelectiveJSON() throws Exception {
+        CompiledTemplate template = CompiledTemplate.compile(
+                new FileInputStream(staticPath + File.separator + "融资合同.xml"));
+        JSONObject sample = (JSONObject) new JSONParser().parse(new InputStreamReader(
+                new FileInputStream(staticPath + File.separator + "融资合同.json"), "UTF-8"));
+
+        // 模板不用到的审计记录
+        JSONArray audit = new JSONArray();
+        for (int i = 0; i < 20000; i++) {
+            JSONObject entry = new JSONObject();
+            entry.put("seq", i);
+            entry.put("operator", "user" + (i % 37));
+            entry.put("action", "modify \"field\" " + i);
+            entry.put("amount", i * 1.5);
+            audit.add(entry);
+        }
+        ((Map<String, Object>) sample.get("data")).put("auditTrail", audit);
+        sample.put("meta", audit);
+        byte[] json_bytes = sample.toJSONString().getBytes("UTF-8");
+
+        DataSource full = DataSource.fromJSON(new ByteArrayInputStream(json_bytes));
+        JSONDataSource source = template.parseData(new ByteArrayInputStream(json_bytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.renderPDF(full, out);
+        byte[] full_pdf = out.toByteArray();
+        out = new ByteArrayOutputStream();
+        template.renderPDF(source, out);
+        byte[] selective_pdf = out.toByteArray();
+
+        assertEquals((long) json_bytes.length, source.getTotalBytes());
+        assertTrue(source.getSkippedBytes() > json_bytes.length / 2,
+                String.valueOf(source.getSkippedBytes()));
+        PdfReader full_reader = new PdfReader(full_pdf);
+        PdfReader selective_reader = new PdfReader(selective_pdf);
+        assertEquals(full_reader.getNumberOfPages(), selective_reader.getNumberOfPages());
+        for (int i = 1; i <= full_reader.getNumberOfPages(); i++) {
+            assertArrayEquals(full_reader.getPageContent(i),
+                    selective_reader.getPageContent(i), "page " + i);
+        }
+    }
+
+    @Test
+    public void testStaticPageCache() throws Exception {
+        StringBuilder xml = new StringBuilder("<textpdf>"
+                + "<title>Loan Agreement</title>"
+                + "<para><span>Borrower:</span><value id=\"buyer\"/></para>"
+                + "<pagebreak/>");
+        for (int i = 1; i <= 120; i++) {
+            xml.append("<section>Clause ").append(i).append("</section>")
+                    .append("<para>The parties agree that this clause ")
+                    .append(i).append(" applies to every contract issued under ")
+                    .append("the programme and shall survive its termination.</para>");
+        }
+        xml.append("<pagebreak/><table columns=\"1,3\">");
+        for (int i = 1; i <= 40; i++) {
+            xml.append("<cell>").append(i).append("</cell><cell>Definition ")
+                    .append(i).append("</cell>");
+        }
+        xml.append("</table><pagebreak/>"
+                + "<para><span>Signed by:</span><value id=\"buyer\"/></para>"
+                + "</textpdf>");
+        CompiledTemplate template = CompiledTemplate.compile(
+                new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("buyer", "ACME");
+        DataSource source = DataSource.of("cache", data);
+
+        template.setStaticPageCache(false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFDoc pdf_doc = new PDFDoc(out);
+        pdf_doc.addPageNum();
+        template.render(pdf_doc, source);
+        byte[] uncached_pdf = out.toByteArray();
+
+        // 第一次排版静态段并放入缓存，第二次直接使用
+        template.setStaticPageCache(true);
+        PageCacheStats stats = null;
+        byte[] cached_pdf = null;
+        for (int round = 0; round < 2; round++) {
+            out = new ByteArrayOutputStream();
+            pdf_doc = new PDFDoc(out);
+            pdf_doc.addPageNum();
+            stats = template.render(pdf_doc, source);
+            cached_pdf = out.toByteArray();
+        }
+
+        assertEquals(2, stats.getHits());
+        assertEquals(0, stats.getMisses());
+        assertEquals(1.0, stats.getHitRatio());
+        PdfReader uncached_reader = new PdfReader(uncached_pdf);
+        PdfReader cached_reader = new PdfReader(cached_pdf);
+        int pages = uncached_reader.getNumberOfPages();
+        assertTrue(pages > 4, String.valueOf(pages));
+        assertEquals(pages, cached_reader.getNumberOfPages());
+        assertEquals(pages - 2, stats.getStaticPages());
+        for (int i = 1; i <= pages; i++) {
+            assertEquals(PdfTextExtractor.getTextFromPage(uncached_reader, i),
+                    PdfTextExtractor.getTextFromPage(cached_reader, i), "page " + i);
+        }
+    }
+
+    @Test
+    public void testParallelSegments() throws Exception {
+        // 耗时见 src/jmh 中的 ParallelSegmentBenchmark
+        // 6 段，每段包含数据和一个 repeat 表格
+        StringBuilder xml = new StringBuilder("<textpdf>");
+        for (int i = 1; i <= 6; i++) {
+            if (i > 1) {
+                xml.append("<pagebreak/>");
+            }
+            xml.append("<chapter>Schedule ").append(i).append("</chapter>")
+                    .append("<para><span>Borrower:</span><value id=\"buyer\"/></para>");
+            xml.append("<table columns=\"1,2,2\"><repeat path=\"plan\">"
+                    + "<cell><value id=\"period\"/></cell>"
+                    + "<cell><value id=\"date\"/></cell>"
+                    + "<cell><value id=\"amount\"/></cell></repeat></table>");
+        }
+        xml.append("</textpdf>");
+        CompiledTemplate template = CompiledTemplate.compile(
+                new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+
+        JSONArray plan = new JSONArray();
+        for (int i = 1; i <= 60; i++) {
+            JSONObject row = new JSONObject();
+            row.put("period", (long) i);
+            row.put("date", "2024-01-15");
+            row.put("amount", "1000.50");
+            plan.add(row);
+        }
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("buyer", "ACME");
+        data.put("plan", plan);
+        DataSource source = DataSource.of("parallel", data);
+
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        PDFDoc pdf_doc = new PDFDoc(serial);
+        pdf_doc.addPageNum();
+        template.render(pdf_doc, source);
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            pdf_doc = new PDFDoc(parallel);
+            pdf_doc.addPageNum();
+            template.render(pdf_doc, source, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        PdfReader serial_reader = new PdfReader(serial.toByteArray());
+        PdfReader parallel_reader = new PdfReader(parallel.toByteArray());
+        assertTrue(serial_reader.getNumberOfPages() > 6);
+        assertEquals(serial_reader.getNumberOfPages(), parallel_reader.getNumberOfPages());
+        for (int i = 1; i <= serial_reader.getNumberOfPages(); i++) {
+            assertEquals(PdfTextExtractor.getTextFromPage(serial_reader, i),
+                    PdfTextExtractor.getTextFromPage(parallel_reader, i), "page " + i);
+        }
+        serial_reader.close();
+        parallel_reader.close();
+    }
+
+    @Test
+    public void testSegmentCache() throws Exception {
+        String[] fields = {
+                "financeDateStart", "financeDateEnd", "amount", "rate", "buyer",
+                "seller", "bank", "account", "guarantor", "signDate"
+        };
+        StringBuilder xml = new StringBuilder("<textpdf>");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                xml.append("<pagebreak/>");
+            }
+            xml.append("<section>Article ").append(i + 1).append("</section>")
+                    .append("<para><span>").append(fields[i]).append(":</span>")
+                    .append("<value id=\"").append(fields[i]).append("\"/></para>");
+            for (int j = 0; j < 30; j++) {
+                xml.append("<para>This article binds both parties and their successors.</para>");
+            }
+        }
+        xml.append("</textpdf>");
+        CompiledTemplate template = CompiledTemplate.compile(
+                new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+        Map<String, Object> data = new HashMap<String, Object>();
+        for (String field : fields) {
+            data.put(field, field + "-value");
+        }
+
+        SegmentCache cache = new SegmentCache(16 * 1024 * 1024);
+        template.setSegmentCache(cache);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.renderPDF(DataSource.of("v1", data), out);
+        assertEquals(fields.length, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        // 只有一个字段改变，其它段都使用缓存
+        data.put("financeDateEnd", "2025-12-31");
+        out = new ByteArrayOutputStream();
+        template.renderPDF(DataSource.of("v2", data), out);
+        byte[] cached_pdf = out.toByteArray();
+        assertEquals(fields.length - 1, cache.getHits());
+        assertEquals(fields.length + 1, cache.getMisses());
+
+        template.setSegmentCache(null);
+        out = new ByteArrayOutputStream();
+        template.renderPDF(DataSource.of("v2", data), out);
+        PdfReader cached_reader = new PdfReader(cached_pdf);
+        PdfReader plain_reader = new PdfReader(out.toByteArray());
+        assertEquals(plain_reader.getNumberOfPages(), cached_reader.getNumberOfPages());
+        for (int i = 1; i <= plain_reader.getNumberOfPages(); i++) {
+            assertEquals(PdfTextExtractor.getTextFromPage(plain_reader, i),
+                    PdfTextExtractor.getTextFromPage(cached_reader, i), "page " + i);
+        }
+
+        // 字节上限只够保存几段，按最近使用顺序淘汰
+        SegmentCache small = new SegmentCache(cache.getBytes() / 4);
+        template.setSegmentCache(small);
+        template.renderPDF(DataSource.of("v2", data), new ByteArrayOutputStream());
+        assertTrue(small.getEvictions() > 0);
+        assertTrue(small.getBytes() <= cache.getBytes() / 4, small.toString());
+    }
+
+    @Test
+    public void testStyleAllocation() throws Exception {
+        CompiledTemplate template = CompiledTemplate.compile(
+                new FileInputStream(staticPath + File.separator + "融资合同.xml"));
+        DataSource source = template.parseData(
+                new FileInputStream(staticPath + File.separator + "融资合同.json"));
+        com.sun.management.ThreadMXBean thread_bean = (com.sun.management.ThreadMXBean)
+                java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread_id = Thread.currentThread().getId();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512 * 1024);
+        for (int round = 0; round < 20; round++) {
+            out.reset();
+            template.renderPDF(source, out);
+        }
+        int rounds = 50;
+        long allocated = thread_bean.getThreadAllocatedBytes(thread_id);
+        for (int round = 0; round < rounds; round++) {
+            out.reset();
+            template.renderPDF(source, out);
+        }
+        allocated = thread_bean.getThreadAllocatedBytes(thread_id) - allocated;
+        int pages = new PdfReader(out.toByteArray()).getNumberOfPages();
+        long page_bytes = allocated / rounds / pages;
+
+        // 改进前约为每页 348 KB，剩下的大部分在 iText 中分配
+        assertTrue(page_bytes < 336 * 1024, String.valueOf(page_bytes));
+    }
+
+    @Test
+    public void testParserAllocationBudget() throws Exception {
+        // 单遍整理空白的结果必须与原来的正则表达式相同
+        java.util.Random random = new java.util.Random(42);
+        char[] alphabet = {' ', '\t', '\n', '\r', '\f', '\u000B', '\u0001', 'a', '中', '.'};
+        for (int i = 0; i < 20000; i++) {
+            char[] text = new char[random.nextInt(12)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            StringBuilder builder = new StringBuilder("x");
+            Util.appendTemplateText(builder, text, 0, text.length);
+            String expected = new String(text).replaceAll("\\s*\n+\\s*", "").trim();
+            assertEquals("x" + expected, builder.toString(), Arrays.toString(text));
+        }
+
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        com.sun.management.ThreadMXBean thread_bean = (com.sun.management.ThreadMXBean)
+                java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread_id = Thread.currentThread().getId();
+
+        // 只编译模板(解析 XML)，以及完整的 TextParser 生成
+        for (int round = 0; round < 30; round++) {
+            CompiledTemplate.compile(new ByteArrayInputStream(xml));
+            new TextParser(new ByteArrayInputStream(xml), new ByteArrayInputStream(json),
+                    new ByteArrayOutputStream(512 * 1024)).genPDF();
+        }
+        int rounds = 50;
+        long allocated = thread_bean.getThreadAllocatedBytes(thread_id);
+        for (int round = 0; round < rounds; round++) {
+            CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        }
+        long compile_bytes = (thread_bean.getThreadAllocatedBytes(thread_id) - allocated) / rounds;
+
+        allocated = thread_bean.getThreadAllocatedBytes(thread_id);
+        for (int round = 0; round < rounds; round++) {
+            new TextParser(new ByteArrayInputStream(xml), new ByteArrayInputStream(json),
+                    new ByteArrayOutputStream(512 * 1024)).genPDF();
+        }
+        long render_bytes = (thread_bean.getThreadAllocatedBytes(thread_id) - allocated) / rounds;
+        // 改进前分别约为 2100 KB 和 6100 KB
+        assertTrue(compile_bytes < 768 * 1024, String.valueOf(compile_bytes));
+        assertTrue(render_bytes < 5632 * 1024, String.valueOf(render_bytes));
+    }
+
+    @Test
+    public void testEngineConcurrentRender() throws Exception {
+        final TextPdfEngine engine = TextPdfEngine.builder()
+                .setPageNum(true)
+                .setHeader("TextPdf")
+                .setBlockDefaultFontSize(PDFDoc.BLOCK_PARA, 11)
+                .build();
+        final byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        final byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        final CompiledTemplate template = engine.compile(new ByteArrayInputStream(xml));
+
+        // 顺序生成的结果作为参照
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.render(template, new ByteArrayInputStream(json), out);
+        String expected = extractText(out.toByteArray());
+        assertTrue(expected.contains("TextPdf"));
+
+        int documents = 6;
+
+        // 多个线程同时编译模板和生成，结果必须与顺序生成的相同
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < documents; i++) {
+                    final boolean recompile = i % 2 == 0;
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            CompiledTemplate used = recompile ?
+                                    engine.compile(new ByteArrayInputStream(xml)) : template;
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            engine.render(used, new ByteArrayInputStream(json), out);
+                            return extractText(out.toByteArray());
+                        }
+                    }));
+                }
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // 引擎参数在 build() 之后不再改变
+        PDFDoc pdf_doc = engine.createPDFDoc(new ByteArrayOutputStream());
+        pdf_doc.setBlockDefaultFontSize(PDFDoc.BLOCK_PARA, 20);
+        out = new ByteArrayOutputStream();
+        engine.render(template, new ByteArrayInputStream(json), out);
+        assertEquals(expected, extractText(out.toByteArray()));
+    }
+
+    @Test
+    public void testRenderMetrics() throws Exception {
+        final Map<String, Long> counts = new java.util.concurrent.ConcurrentHashMap<String, Long>();
+        RenderMetrics metrics = new RenderMetrics() {
+            private void add(String name, long value) {
+                counts.merge(name, value, Long::sum);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public void recordPhase(String phase, long nanos) {
+                add("phase." + phase, 1);
+                if (nanos < 0) {
+                    add("phase.negative", 1);
+                }
+            }
+
+            @Override
+            public void recordDocument(String type, int pages, long bytes) {
+                add(type + ".documents", 1);
+                add(type + ".pages", pages);
+                add(type + ".bytes", bytes);
+            }
+
+            @Override
+            public void recordMissingKey() {
+                add("missing", 1);
+            }
+
+            @Override
+            public void recordCache(String cache, boolean hit) {
+                add(cache + (hit ? ".hit" : ".miss"), 1);
+            }
+        };
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+
+        RenderMetrics.install(metrics);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml));
+            template.renderPDF(template.parseData(new ByteArrayInputStream(json)), out);
+            template.renderHTML(null, new ByteArrayOutputStream());
+            // 缺少数据的 value
+            JSONObject empty = new JSONObject();
+            empty.put("data", new JSONObject());
+            CompiledTemplate.compile(new ByteArrayInputStream(
+                    "<textpdf><para><value id=\"nothing\"/></para></textpdf>".getBytes("UTF-8")))
+                    .renderPDF(empty, new ByteArrayOutputStream());
+
+            PDFProcess process = new PDFProcess(new ByteArrayInputStream(out.toByteArray()),
+                    new ByteArrayOutputStream());
+            process.addQRCode("metrics");
+            process.addQRCode("metrics");
+            process.finish();
+        } finally {
+            RenderMetrics.install(null);
+        }
+
+        assertNull(counts.get("phase.negative"));
+        assertEquals(2L, counts.get("phase." + RenderMetrics.PHASE_TEMPLATE));
+        assertEquals(1L, counts.get("phase." + RenderMetrics.PHASE_JSON));
+        assertEquals(3L, counts.get("phase." + RenderMetrics.PHASE_LAYOUT));
+        assertEquals(3L, counts.get("phase." + RenderMetrics.PHASE_CLOSE));
+        assertEquals(1L, counts.get("phase." + RenderMetrics.PHASE_STAMP));
+        assertEquals(2L, counts.get("pdf.documents"));
+        assertEquals(12L, counts.get("pdf.pages"));
+        assertTrue(counts.get("pdf.bytes") > out.size());
+        assertEquals(1L, counts.get("html.documents"));
+        assertTrue(counts.get("html.bytes") > 0);
+        assertEquals(1L, counts.get("missing"));
+        assertTrue(counts.get(RenderMetrics.CACHE_FONT + ".hit") > 100);
+        assertTrue(counts.get(RenderMetrics.CACHE_QRCODE + ".hit") >= 1);
+
+        // 恢复为空操作后不再统计
+        counts.clear();
+        CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        assertTrue(counts.isEmpty());
+        assertFalse(RenderMetrics.get().isEnabled());
+    }
+
+    @Test
+    public void testJfrEvents() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        Path file = Files.createTempFile("textpdf", ".jfr");
+
+        jdk.jfr.Recording recording = new jdk.jfr.Recording();
+        recording.enable("com.example.mytextpdf.TemplateParse");
+        recording.enable("com.example.mytextpdf.DataBind");
+        recording.enable("com.example.mytextpdf.BlockWrite");
+        recording.enable("com.example.mytextpdf.DocumentRender");
+        recording.enable("com.example.mytextpdf.DocumentClose");
+        recording.enable("com.example.mytextpdf.PDFProcess");
+        recording.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml), "融资合同");
+        template.renderPDF(template.parseData(new ByteArrayInputStream(json)), out);
+        ByteArrayOutputStream stamped = new ByteArrayOutputStream();
+        PDFProcess process = new PDFProcess(new ByteArrayInputStream(out.toByteArray()), stamped);
+        process.addPageNum();
+        process.finish();
+        recording.stop();
+        recording.dump(file);
+        recording.close();
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        try {
+            for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                counts.merge(name, 1, Integer::sum);
+                if (name.equals("com.example.mytextpdf.TemplateParse")) {
+                    assertEquals("融资合同", event.getString("template"));
+                    assertEquals(xml.length, event.getLong("bytes"));
+                } else if (name.equals("com.example.mytextpdf.DataBind")) {
+                    assertEquals(json.length, event.getLong("totalBytes"));
+                } else if (name.equals("com.example.mytextpdf.BlockWrite")) {
+                    assertEquals("融资合同", event.getString("template"));
+                    assertTrue(event.getInt("page") >= 1 && event.getInt("page") <= 11);
+                } else if (name.equals("com.example.mytextpdf.DocumentRender")) {
+                    assertEquals(11, event.getInt("pages"));
+                    assertEquals(out.size(), event.getLong("bytes"));
+                } else if (name.equals("com.example.mytextpdf.PDFProcess")
+                        && event.getString("operation").equals("finish")) {
+                    assertEquals(stamped.size(), event.getLong("bytes"));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(1, counts.get("com.example.mytextpdf.TemplateParse"));
+        assertEquals(1, counts.get("com.example.mytextpdf.DataBind"));
+        assertTrue(counts.get("com.example.mytextpdf.BlockWrite") > 100);
+        assertEquals(1, counts.get("com.example.mytextpdf.DocumentRender"));
+        assertEquals(1, counts.get("com.example.mytextpdf.DocumentClose"));
+        assertEquals(2, counts.get("com.example.mytextpdf.PDFProcess"));
+    }
+
+    @Test
+    public void testOutputProfiles() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        template.setStaticPageCache(false);
+        DataSource data = template.parseData(new ByteArrayInputStream(json));
+
+        // 耗时见 src/jmh 中的 OutputProfileBenchmark
+        String expected = null;
+        Map<PDFOutputProfile, Integer> sizes = new HashMap<PDFOutputProfile, Integer>();
+        for (PDFOutputProfile profile : PDFOutputProfile.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PDFDoc pdf_doc = new PDFDoc(out);
+            pdf_doc.setOutputProfile(profile);
+            template.render(pdf_doc, data);
+            byte[] pdf = out.toByteArray();
+            sizes.put(profile, pdf.length);
+
+            // 输出方式只影响压缩，不影响内容
+            PdfReader reader = new PdfReader(pdf);
+            assertEquals(profile.getPdfVersion(), reader.getPdfVersion());
+            reader.close();
+            String text = extractText(pdf);
+            if (expected == null) {
+                expected = text;
+            }
+            assertEquals(expected, text, profile.toString());
+        }
+        assertTrue(sizes.get(PDFOutputProfile.ARCHIVE) < sizes.get(PDFOutputProfile.BALANCED),
+                sizes.toString());
+        assertTrue(sizes.get(PDFOutputProfile.BALANCED) <= sizes.get(PDFOutputProfile.FAST),
+                sizes.toString());
+    }
+
+    @Test
+    public void testParallelDeflate() throws Exception {
+        // 耗时见 src/jmh 中的 OutputProfileBenchmark
+        StringBuilder xml = new StringBuilder("<textpdf>");
+        for (int i = 1; i <= 5; i++) {
+            if (i > 1) {
+                xml.append("<pagebreak/>");
+            }
+            xml.append("<chapter>第 ").append(i).append(" 部分</chapter>")
+                    .append("<para><span>卖方：</span><value id=\"buyer\"/></para>");
+            for (int j = 0; j < 8; j++) {
+                xml.append("<para>本合同项下的应收账款转让后，卖方仍应按照基础交易合同的约定"
+                        + "履行其义务，保理公司不承担卖方在基础交易合同项下的任何义务和责任。</para>");
+            }
+        }
+        xml.append("</textpdf>");
+        CompiledTemplate template = CompiledTemplate.compile(
+                new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+        template.setStaticPageCache(false);
+        DataSource data = template.parseData(new ByteArrayInputStream(
+                "{\"data\": {\"buyer\": \"X公司\"}}".getBytes("UTF-8")));
+
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        PDFDoc pdf_doc = new PDFDoc(serial);
+        pdf_doc.addPageNum();
+        template.render(pdf_doc, data);
+
+        ByteArrayOutputStream pooled = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            pdf_doc = new PDFDoc(pooled);
+            pdf_doc.addPageNum();
+            pdf_doc.setDeflatePool(pool);
+            template.render(pdf_doc, data);
+        } finally {
+            pool.shutdown();
+        }
+
+        // 除了随机的文档 ID、时间和字体子集前缀，每个对象都与顺序压缩的相同
+        assertEquals(5, new PdfReader(pooled.toByteArray()).getNumberOfPages());
+        assertEquals(pdfObjects(serial.toByteArray()), pdfObjects(pooled.toByteArray()));
+    }
+
+    /**
+     * 并行压缩后重写的文件：交叉引用表的偏移和流的 /Length 都要正确，
+     * 写出失败时 render() 抛出异常
+     */
+    @Test
+    public void testParallelDeflateStructure() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(staticPath, "融资合同.xml"));
+        byte[] json = Files.readAllBytes(Paths.get(staticPath, "融资合同.json"));
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(xml));
+        DataSource data = template.parseData(new ByteArrayInputStream(json));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PDFDoc pdf_doc = new PDFDoc(out);
+            pdf_doc.setDeflatePool(pool);
+            template.render(pdf_doc, data);
+            byte[] pdf = out.toByteArray();
+            String text = new String(pdf, "ISO-8859-1");
+
+            PdfReader reader = new PdfReader(pdf);
+            assertTrue(!reader.isRebuilt(), "xref rebuilt");
+            int streams = 0;
+            for (int i = 1; i < reader.getXrefSize(); i++) {
+                PdfObject object = reader.getPdfObjectRelease(i);
+                if (object == null || !object.isStream()) {
+                    continue;
+                }
+                PRStream stream = (PRStream) object;
+                // /Length 之后紧接着是 endstream
+                int length = ((PdfNumber) PdfReader.getPdfObject(
+                        stream.get(PdfName.LENGTH))).intValue();
+                int end = (int) stream.getOffset() + length;
+                while (text.charAt(end) == '\r' || text.charAt(end) == '\n') {
+                    end++;
+                }
+                assertTrue(text.startsWith("endstream", end), "length of object " + i);
+                assertEquals((long) length, (long) PdfReader.getStreamBytesRaw(stream).length);
+                PdfReader.getStreamBytes(stream);
+                streams++;
+            }
+            assertTrue(streams > 0);
+            reader.close();
+
+            // 每个使用中的交叉引用项指向 "编号 0 obj"
+            int xref = Integer.parseInt(text.substring(
+                    text.lastIndexOf("startxref") + 9).trim().split("\\s+")[0]);
+            assertTrue(text.startsWith("xref", xref));
+            String[] lines = text.substring(xref).split("\r?\n|\r");
+            String[] header = lines[1].trim().split(" ");
+            int first = Integer.parseInt(header[0]);
+            int count = Integer.parseInt(header[1]);
+            for (int i = 0; i < count; i++) {
+                String[] entry = lines[2 + i].trim().split(" ");
+                if (entry[2].equals("n")) {
+                    int offset = Integer.parseInt(entry[0]);
+                    assertTrue(text.startsWith((first + i) + " 0 obj", offset),
+                            "offset of object " + (first + i));
+                }
+            }
+
+            // 写出失败时不能当作成功
+            pdf_doc = new PDFDoc(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("disk full");
+                }
+            });
+            pdf_doc.setDeflatePool(pool);
+            IOException error = null;
+            try {
+                template.render(pdf_doc, data);
+            } catch (IOException ex) {
+                error = ex;
+            }
+            assertTrue(error != null, "write failure ignored");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * PDF 中的对象，iText 写出 Form XObject 的顺序不固定，所以按编号比较
+     */
+    private static Map<String, String> pdfObjects(byte[] pdf) throws IOException {
+        String text = new String(pdf, "ISO-8859-1")
+                .replaceAll("D:\\d{14}[^)]*", "D:")
+                .replaceAll("<[0-9a-f]{32}>", "<>")
+                .replaceAll("/[A-Z]{6}\\+", "/+");
+        Map<String, String> objects = new java.util.TreeMap<String, String>();
+        java.util.regex.Matcher matcher = java.util.regex.Pattern.compile(
+                "(?s)\n(\\d+) 0 obj\n(.*?)\nendobj").matcher(text);
+        while (matcher.find()) {
+            objects.put(matcher.group(1), matcher.group(2));
+        }
+        return objects;
+    }
+
+    private static String extractText(byte[] pdf) throws IOException {
+        PdfReader reader = new PdfReader(pdf);
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            text.append(PdfTextExtractor.getTextFromPage(reader, i)).append('\f');
+        }
+        reader.close();
+        return text.toString();
+    }
+
 }